@@ -0,0 +1,84 @@
+import models.Client;
+import models.TransactionRequest;
+import models.enums.AccountType;
+import models.enums.BatchMode;
+import models.enums.DurabilityMode;
+import services.AccountService;
+import services.ClientService;
+import services.Journal;
+import services.TransactionService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Transfers per second between random pairs of 1000 accounts, three ways: one makeTransfer call per
+ * transfer, one per-item batch, and one all-or-nothing batch. Repeated with no journal and with each
+ * durability mode; fewer transfers are run where every operation waits for an fsync. Each
+ * configuration runs twice on fresh services and the second (warmed-up) run is reported.
+ * <pre>
+ * javac -d out/bench $(find src bench -name '*.java')
+ * java -cp out/bench BatchBenchmark
+ * </pre>
+ */
+public class BatchBenchmark {
+    private static final int ACCOUNTS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-13s %7s %15s %15s %15s%n", "journal", "items", "single-op loop", "per-item batch", "all-or-nothing");
+        run(null, 200_000);
+        run(DurabilityMode.ASYNC, 200_000);
+        run(DurabilityMode.GROUP_COMMIT, 20_000);
+        run(DurabilityMode.SYNC, 3_000);
+    }
+
+    private static void run(DurabilityMode mode, int transfers) throws Exception {
+        double[] rates = null;
+        for (int round = 0; round < 2; round++) {
+            Path directory = mode == null ? null : Files.createTempDirectory("batch-bench");
+            Journal journal = directory == null ? Journal.disabled() : new Journal(directory.resolve("bank.journal"), mode, 0L);
+            rates = measure(journal, transfers);
+            journal.close();
+            if (directory != null) {
+                Files.delete(directory.resolve("bank.journal"));
+                Files.delete(directory);
+            }
+        }
+        System.out.printf("%-13s %7d %15.0f %15.0f %15.0f%n", mode == null ? "none" : mode, transfers, rates[0], rates[1], rates[2]);
+    }
+
+    private static double[] measure(Journal journal, int transfers) {
+        ClientService clientService = new ClientService(journal);
+        AccountService accountService = new AccountService(clientService, journal);
+        TransactionService transactionService = new TransactionService(accountService, journal);
+        Client client = clientService.createClient(null, "Bench", "Client", "bench" + System.nanoTime() + "@bank.test", "password");
+        List<String> accountIds = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accountIds.add(accountService.createAccount(AccountType.CURRENT, client.getClientId(), 1e9).getAccountId());
+        }
+        Random random = new Random(2);
+        List<TransactionRequest> requests = new ArrayList<>(transfers);
+        for (int i = 0; i < transfers; i++) {
+            requests.add(TransactionRequest.transfer(accountIds.get(random.nextInt(ACCOUNTS)), accountIds.get(random.nextInt(ACCOUNTS)),
+                    1 + random.nextInt(500), "pay"));
+        }
+
+        double[] rates = new double[3];
+        long started = System.nanoTime();
+        for (TransactionRequest request : requests) {
+            transactionService.makeTransfer(request.getSourceAccountId(), request.getDestinationAccountId(),
+                    request.getAmount(), request.getDescription());
+        }
+        rates[0] = transfers / ((System.nanoTime() - started) / 1e9);
+        started = System.nanoTime();
+        transactionService.submitBatch(requests, BatchMode.PER_ITEM);
+        rates[1] = transfers / ((System.nanoTime() - started) / 1e9);
+        started = System.nanoTime();
+        transactionService.submitBatch(requests, BatchMode.ALL_OR_NOTHING);
+        rates[2] = transfers / ((System.nanoTime() - started) / 1e9);
+        return rates;
+    }
+}
@@ -0,0 +1,123 @@
+import models.Client;
+import models.Transaction;
+import models.enums.AccountType;
+import services.AccountService;
+import services.ClientService;
+import services.TransactionService;
+import utils.IdGenerator;
+import utils.Ids;
+import utils.TimeOrderedIdGenerator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Random UUIDs against time-ordered IDs. First, 200,000 IDs from one thread are checked to be unique
+ * and strictly increasing, and 400,000 from 4 threads to be unique. Then, with each generator:
+ * 1,000,000 IDs generated, 300,000 deposits with no journal over 100 accounts, and a lookup by ID of
+ * every 7th transaction in the ledger. Each measurement runs three times; the last is reported.
+ * <pre>
+ * javac -d out/bench $(find src bench -name '*.java')
+ * java -cp out/bench IdBenchmark [ids] [deposits]
+ * </pre>
+ */
+public class IdBenchmark {
+    private static final int ACCOUNTS = 100;
+    private static final int THREADS = 4;
+    private static final int RUNS = 3;
+
+    private static volatile int sink;
+
+    public static void main(String[] args) throws Exception {
+        int ids = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int deposits = args.length > 1 ? Integer.parseInt(args[1]) : 300_000;
+        TimeOrderedIdGenerator timeOrdered = new TimeOrderedIdGenerator(0);
+
+        String previous = "";
+        Set<String> seen = new HashSet<>();
+        boolean increasing = true;
+        for (int i = 0; i < 200_000; i++) {
+            String id = timeOrdered.nextId();
+            increasing &= id.compareTo(previous) > 0;
+            seen.add(id);
+            previous = id;
+        }
+        System.out.printf("200000 IDs from one thread: unique=%s increasing=%s%n", seen.size() == 200_000, increasing);
+
+        ConcurrentHashMap<String, Boolean> concurrent = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            workers.add(executor.submit(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    concurrent.put(timeOrdered.nextId(), Boolean.TRUE);
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+        System.out.printf("%d IDs from %d threads: unique=%s%n", THREADS * 100_000, THREADS, concurrent.size() == THREADS * 100_000);
+
+        for (IdGenerator generator : new IdGenerator[]{IdGenerator.RANDOM, timeOrdered}) {
+            String label = generator == IdGenerator.RANDOM ? "random" : "time-ordered";
+            double idsPerSecond = 0;
+            for (int run = 0; run < RUNS; run++) {
+                idsPerSecond = generate(generator, ids);
+            }
+            double[] result = null;
+            for (int run = 0; run < RUNS; run++) {
+                result = deposits(generator, deposits);
+            }
+            System.out.printf("%-12s %9.0f IDs/s  %8.0f deposits/s  %d lookups in %.0f ms%n",
+                    label, idsPerSecond, result[0], (long) result[1], result[2]);
+        }
+    }
+
+    private static double generate(IdGenerator generator, int count) {
+        long started = System.nanoTime();
+        int hash = 0;
+        for (int i = 0; i < count; i++) {
+            hash += generator.nextId().hashCode();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        sink = hash;
+        return count / seconds;
+    }
+
+    // Deposits per second, lookups made, and lookup milliseconds
+    private static double[] deposits(IdGenerator generator, int count) {
+        Ids.setGenerator(generator);
+        ClientService clientService = new ClientService();
+        AccountService accountService = new AccountService(clientService);
+        TransactionService transactionService = new TransactionService(accountService);
+        Client client = clientService.createClient(null, "Bench", "Client", "bench" + System.nanoTime() + "@bank.test", "password");
+        List<String> accountIds = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accountIds.add(accountService.createAccount(AccountType.CURRENT, client.getClientId(), 100).getAccountId());
+        }
+
+        long started = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            transactionService.MakeDeposit(accountIds.get(i % ACCOUNTS), 10, "bench");
+        }
+        double depositsPerSecond = count / ((System.nanoTime() - started) / 1e9);
+
+        List<Transaction> all = transactionService.getAllTransactions();
+        started = System.nanoTime();
+        long found = 0;
+        for (int i = 0; i < all.size(); i += 7) {
+            if (transactionService.findTransactionById(all.get(i).getTransactionId()) != null) {
+                found++;
+            }
+        }
+        return new double[]{depositsPerSecond, found, (System.nanoTime() - started) / 1e6};
+    }
+}
@@ -0,0 +1,120 @@
+import models.Client;
+import models.enums.AccountType;
+import models.enums.DurabilityMode;
+import services.AccountService;
+import services.ClientService;
+import services.Journal;
+import services.TransactionService;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Deposits per second with no journal and with each durability mode, from one thread and from 16
+ * threads (each on its own account, so only the journal is shared). Afterwards every record in the
+ * file is read back and its CRC and sequence number checked.
+ * <pre>
+ * javac -d out/bench $(find src bench -name '*.java')
+ * java -cp out/bench JournalBenchmark [directory]
+ * </pre>
+ * The journal files go to a temporary directory unless one is given; put it on the disk you want
+ * to measure, since fsync cost is most of what this shows.
+ */
+public class JournalBenchmark {
+    private static final int THREADS = 16;
+
+    public static void main(String[] args) throws Exception {
+        Path directory = args.length > 0 ? Files.createDirectories(Paths.get(args[0])) : Files.createTempDirectory("journal-bench");
+        System.out.printf("%-22s %10s %10s %s%n", "mode", "1 thread", THREADS + " threads", "records");
+        System.out.printf("%-22s %10.0f %10.0f%n", "no journal",
+                depositsPerSecond(Journal.disabled(), 1, 20_000), depositsPerSecond(Journal.disabled(), THREADS, 5_000));
+        run(directory, DurabilityMode.SYNC, 0L, 2_000, 300);
+        run(directory, DurabilityMode.GROUP_COMMIT, 1_000L, 2_000, 1_000);
+        run(directory, DurabilityMode.GROUP_COMMIT, 200L, 2_000, 1_000);
+        run(directory, DurabilityMode.GROUP_COMMIT, 0L, 2_000, 1_000);
+        run(directory, DurabilityMode.ASYNC, 2_000L, 20_000, 5_000);
+    }
+
+    private static void run(Path directory, DurabilityMode mode, long commitWindowMicros,
+                            int singleThreadDeposits, int depositsPerThread) throws Exception {
+        double[] rates = new double[2];
+        String records = "";
+        for (int i = 0; i < 2; i++) {
+            Path path = directory.resolve("bench-" + mode + "-" + commitWindowMicros + "-" + i + ".journal");
+            Files.deleteIfExists(path);
+            Journal journal = new Journal(path, mode, commitWindowMicros);
+            rates[i] = i == 0 ? depositsPerSecond(journal, 1, singleThreadDeposits) : depositsPerSecond(journal, THREADS, depositsPerThread);
+            journal.close();
+            records += (i == 0 ? "" : ", ") + verify(path);
+            Files.delete(path);
+        }
+        System.out.printf("%-22s %10.0f %10.0f %s%n", mode + " " + commitWindowMicros + "us", rates[0], rates[1], records);
+    }
+
+    private static double depositsPerSecond(Journal journal, int threads, int depositsPerThread) throws Exception {
+        ClientService clientService = new ClientService(journal);
+        AccountService accountService = new AccountService(clientService, journal);
+        TransactionService transactionService = new TransactionService(accountService, journal);
+        Client client = clientService.createClient(null, "Bench", "Client", "bench" + System.nanoTime() + "@bank.test", "password");
+        List<String> accountIds = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            accountIds.add(accountService.createAccount(AccountType.CURRENT, client.getClientId(), 1000).getAccountId());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (String accountId : accountIds) {
+            workers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < depositsPerThread; i++) {
+                    transactionService.MakeDeposit(accountId, 10, "bench");
+                }
+                return null;
+            }));
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        long elapsedNanos = System.nanoTime() - started;
+        executor.shutdown();
+        return threads * (double) depositsPerThread / (elapsedNanos / 1e9);
+    }
+
+    // Walks the [length][crc32][sequence][type][fields] frames; returns "n records" or the first problem
+    private static String verify(Path path) throws IOException {
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path));
+        long records = 0L;
+        long lastSequence = 0L;
+        while (file.remaining() >= 8) {
+            int length = file.getInt();
+            int crc = file.getInt();
+            byte[] body = new byte[length];
+            file.get(body);
+            CRC32 check = new CRC32();
+            check.update(body, 0, length);
+            if ((int) check.getValue() != crc) {
+                return "bad CRC at record " + (records + 1);
+            }
+            long sequence = ByteBuffer.wrap(body).getLong();
+            if (sequence != lastSequence + 1) {
+                return "sequence " + sequence + " after " + lastSequence;
+            }
+            lastSequence = sequence;
+            records++;
+        }
+        return records + " records";
+    }
+}
@@ -0,0 +1,180 @@
+import models.Client;
+import models.enums.AccountType;
+import services.AccountService;
+import services.ClientService;
+import services.TransactionService;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * The client leaderboard over 200,000 clients (one account each) unless given.
+ * <p>
+ * Lookups: the top 10 the old way, by sorting every client by balance, against the leaderboard, and
+ * the mean time of a client's rank, over 100,000 calls each.
+ * <p>
+ * Consistency: 4 threads deposit, withdraw, transfer, open accounts and set balances while another
+ * thread keeps asking for the top 10 and for ranks; afterwards the whole ranking must equal a
+ * brute-force sort.
+ * <p>
+ * Throughput: 400,000 deposits and transfers from 1 and from 4 threads, with the leaderboard as it is
+ * (a change only queues the client) and eager, where every operation is followed by an empty lookup
+ * so the client is moved in the tree straight away. Each configuration runs twice.
+ * <pre>
+ * javac -d out/bench $(find src bench -name '*.java')
+ * java -Xmx2g -cp out/bench LeaderboardBenchmark [clients]
+ * </pre>
+ */
+public class LeaderboardBenchmark {
+    private static final int WRITERS = 4;
+    private static final int OPERATIONS = 400_000;
+    private static final Comparator<Client> RICHEST_FIRST = Comparator
+            .comparingLong(Client::getBalanceInCentimes).reversed()
+            .thenComparing(Client::getClientId);
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        ClientService clientService = new ClientService();
+        AccountService accountService = new AccountService(clientService);
+        TransactionService transactionService = new TransactionService(accountService);
+        List<String> accountIds = new ArrayList<>();
+        List<String> clientIds = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < clients; i++) {
+            Client client = clientService.createClient(null, "Bench", "Client" + i, "bench" + i + "@bank.test", "password");
+            clientIds.add(client.getClientId());
+            accountIds.add(accountService.createAccount(AccountType.CURRENT, client.getClientId(), 1_000 + random.nextInt(100_000)).getAccountId());
+        }
+
+        lookups(clientService, clientIds);
+        consistency(clientService, accountService, transactionService, accountIds, clientIds);
+        for (int round = 0; round < 2; round++) {
+            for (int threads : new int[]{1, WRITERS}) {
+                throughput(clientService, transactionService, accountIds, threads, false);
+                throughput(clientService, transactionService, accountIds, threads, true);
+            }
+        }
+    }
+
+    private static void lookups(ClientService clientService, List<String> clientIds) {
+        // Every client opened an account since it was tracked, so the first lookup moves them all
+        long started = System.nanoTime();
+        clientService.getTopClientsByBalance(10);
+        System.out.printf("first lookup, moving %d clients: %.1f ms%n", clientIds.size(), (System.nanoTime() - started) / 1e6);
+
+        Random random = new Random(2);
+        int calls = 100_000;
+        for (int round = 0; round < 3; round++) {
+            long a = System.nanoTime();
+            List<Client> sorted = clientService.getAllClients().stream().sorted(RICHEST_FIRST).limit(10).collect(Collectors.toList());
+            long b = System.nanoTime();
+            List<Client> top = null;
+            for (int i = 0; i < calls; i++) {
+                top = clientService.getTopClientsByBalance(10);
+            }
+            long c = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                clientService.getBalanceRank(clientIds.get(random.nextInt(clientIds.size())));
+            }
+            long d = System.nanoTime();
+            System.out.printf("top 10: sort %.1f ms, leaderboard %.2f us (same=%s)  rank %.2f us%n",
+                    (b - a) / 1e6, (c - b) / 1e3 / calls, sorted.equals(top), (d - c) / 1e3 / calls);
+        }
+    }
+
+    private static void consistency(ClientService clientService, AccountService accountService, TransactionService transactionService,
+                                    List<String> accountIds, List<String> clientIds) throws Exception {
+        AtomicBoolean stop = new AtomicBoolean();
+        long[] lookups = new long[1];
+        Thread reader = new Thread(() -> {
+            Random random = new Random(3);
+            while (!stop.get()) {
+                clientService.getTopClientsByBalance(10);
+                clientService.getBalanceRank(clientIds.get(random.nextInt(clientIds.size())));
+                lookups[0] += 2;
+            }
+        });
+        reader.start();
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < WRITERS; t++) {
+            long seed = t;
+            workers.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 200_000 / WRITERS; i++) {
+                    String account = accountIds.get(random.nextInt(accountIds.size()));
+                    int kind = random.nextInt(100);
+                    try {
+                        if (kind < 35) {
+                            transactionService.MakeDeposit(account, 1 + random.nextInt(5_000), "bench");
+                        } else if (kind < 60) {
+                            transactionService.MakeWithdrawal(account, 1 + random.nextInt(500), "bench");
+                        } else if (kind < 95) {
+                            transactionService.makeTransfer(account, accountIds.get(random.nextInt(accountIds.size())), 1 + random.nextInt(500), "bench");
+                        } else if (kind < 98) {
+                            accountService.createAccount(AccountType.SAVINGS, clientIds.get(random.nextInt(clientIds.size())), random.nextInt(1_000));
+                        } else {
+                            accountService.updateAccountBalance(account, random.nextInt(100_000));
+                        }
+                    } catch (ArithmeticException e) {
+                        // Insufficient funds: refused, nothing moved
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+        stop.set(true);
+        reader.join();
+
+        List<Client> sorted = clientService.getAllClients().stream().sorted(RICHEST_FIRST).collect(Collectors.toList());
+        boolean ranksMatch = true;
+        for (int i = 0; i < sorted.size(); i += 997) {
+            ranksMatch &= clientService.getBalanceRank(sorted.get(i).getClientId()) == i + 1;
+        }
+        System.out.printf("after 200000 concurrent changes and %d lookups: ranking equals a sort=%s, sampled ranks match=%s%n",
+                lookups[0], clientService.getTopClientsByBalance(sorted.size()).equals(sorted), ranksMatch);
+    }
+
+    private static void throughput(ClientService clientService, TransactionService transactionService, List<String> accountIds,
+                                   int threads, boolean eager) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        long started = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            workers.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < OPERATIONS / threads; i++) {
+                    String account = accountIds.get(random.nextInt(accountIds.size()));
+                    if (i % 2 == 0) {
+                        transactionService.MakeDeposit(account, 150, "bench");
+                    } else {
+                        transactionService.makeTransfer(account, accountIds.get(random.nextInt(accountIds.size())), 1, "bench");
+                    }
+                    if (eager) {
+                        clientService.getTopClientsByBalance(0);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        long elapsedNanos = System.nanoTime() - started;
+        executor.shutdown();
+        System.out.printf("%d thread%s %-6s %8.0f ops/s%n", threads, threads == 1 ? " " : "s", eager ? "eager" : "queued",
+                OPERATIONS / (elapsedNanos / 1e9));
+    }
+}
@@ -0,0 +1,126 @@
+import models.Client;
+import models.Transaction;
+import models.enums.AccountType;
+import models.enums.TransactionType;
+import services.AccountService;
+import services.ClientService;
+import services.ManagerService;
+import services.TransactionService;
+import utils.Money;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * The manager's transaction views against the old path, over 2,000 clients with one account each and
+ * 500,000 random deposits, withdrawals and transfers unless given. The old path is rebuilt here: every
+ * client's account histories flattened and sorted newest first, then counted by type or filtered by
+ * amount. Results are compared (as sets, since the old path lists a transfer once per leg), and each
+ * time is the mean of 5 calls, over three rounds.
+ * <pre>
+ * javac -d out/bench $(find src bench -name '*.java')
+ * java -Xmx2g -cp out/bench ManagerViewBenchmark [transactions]
+ * </pre>
+ */
+public class ManagerViewBenchmark {
+    private static final int CLIENTS = 2_000;
+    private static final int CALLS = 5;
+    private static final double SUSPICIOUS_AMOUNT = 10_000;
+
+    public static void main(String[] args) {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        ClientService clientService = new ClientService();
+        AccountService accountService = new AccountService(clientService);
+        TransactionService transactionService = new TransactionService(accountService);
+        ManagerService managerService = new ManagerService(clientService, accountService, transactionService);
+        List<String> accountIds = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            Client client = clientService.createClient(null, "Bench", "Client" + i, "bench" + i + "@bank.test", "password");
+            accountIds.add(accountService.createAccount(AccountType.CURRENT, client.getClientId(), 100_000).getAccountId());
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < transactions; i++) {
+            String account = accountIds.get(random.nextInt(CLIENTS));
+            int kind = random.nextInt(3);
+            if (kind == 0) {
+                transactionService.MakeDeposit(account, 100 + random.nextInt(20_000), "bench");
+            } else if (kind == 1) {
+                transactionService.MakeWithdrawal(account, 1 + random.nextInt(50), "bench");
+            } else {
+                transactionService.makeTransfer(account, accountIds.get(random.nextInt(CLIENTS)), 1 + random.nextInt(50), "bench");
+            }
+        }
+
+        List<Transaction> view = managerService.getAllTransactions();
+        List<Transaction> old = oldAllTransactions(clientService);
+        boolean newestFirst = true;
+        for (int i = 1; i < view.size(); i++) {
+            newestFirst &= view.get(i - 1).getTimestamp() >= view.get(i).getTimestamp();
+        }
+        System.out.printf("view %d transactions, old path %d rows; same set=%s, newest first=%s%n",
+                view.size(), old.size(), new HashSet<>(view).equals(new HashSet<>(old)), newestFirst);
+        System.out.printf("suspicious: view %d, same set as old path=%s%n", managerService.detectSuspiciousTransactions().size(),
+                new HashSet<>(managerService.detectSuspiciousTransactions()).equals(new HashSet<>(oldSuspicious(clientService))));
+
+        System.out.printf("%-22s %12s %12s%n", "", "old path", "view");
+        for (int round = 0; round < 3; round++) {
+            long a = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                oldAllTransactions(clientService);
+            }
+            long b = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                managerService.getAllTransactions();
+            }
+            long c = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                oldStatistics(clientService);
+            }
+            long d = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                managerService.getTransactionStatistics();
+            }
+            long e = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                oldSuspicious(clientService);
+            }
+            long f = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                managerService.detectSuspiciousTransactions();
+            }
+            long g = System.nanoTime();
+            print("getAllTransactions", b - a, c - b);
+            print("statistics", d - c, e - d);
+            print("suspicious detection", f - e, g - f);
+        }
+    }
+
+    private static List<Transaction> oldAllTransactions(ClientService clientService) {
+        return clientService.getAllClients().stream()
+                .flatMap(client -> client.getAccounts().stream())
+                .flatMap(account -> account.getTransactions().stream())
+                .sorted(Comparator.comparingLong(Transaction::getTimestamp).reversed())
+                .collect(Collectors.toList());
+    }
+
+    private static Map<TransactionType, Long> oldStatistics(ClientService clientService) {
+        return oldAllTransactions(clientService).stream()
+                .collect(Collectors.groupingBy(Transaction::getTransactionType, Collectors.counting()));
+    }
+
+    private static List<Transaction> oldSuspicious(ClientService clientService) {
+        long threshold = Money.fromAmount(SUSPICIOUS_AMOUNT);
+        return oldAllTransactions(clientService).stream()
+                .filter(transaction -> transaction.getAmountInCentimes() > threshold)
+                .collect(Collectors.toList());
+    }
+
+    private static void print(String label, long oldNanos, long viewNanos) {
+        System.out.printf("%-22s %9.2f ms %9.2f ms%n", label, oldNanos / 1e6 / CALLS, viewNanos / 1e6 / CALLS);
+    }
+}
@@ -0,0 +1,128 @@
+import models.Client;
+import models.Transaction;
+import models.enums.AccountType;
+import models.enums.TransactionType;
+import services.AccountService;
+import services.ClientService;
+import services.ManagerService;
+import services.ReportEngine;
+import services.TransactionService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Manager reports computed sequentially and on report pools of 1, 4, 16 and 64 threads, over 200,000
+ * accounts and a ledger of random transactions (2,000,000 unless given). Each time is the mean of 5
+ * runs after 5 warm-up runs, and every pool's results are compared with the sequential ones.
+ * <p>
+ * Then a third of the ledger is deleted (and compacted) from another thread while the report engine
+ * recounts the transaction types in a loop, to exercise its restart after a compaction; the final
+ * recount must match the store's own counts.
+ * <pre>
+ * javac -d out/bench $(find src bench -name '*.java')
+ * java -Xmx4g -cp out/bench ReportBenchmark [transactions]
+ * </pre>
+ */
+public class ReportBenchmark {
+    private static final int ACCOUNTS = 200_000;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        ClientService clientService = new ClientService();
+        AccountService accountService = new AccountService(clientService);
+        TransactionService transactionService = new TransactionService(accountService);
+        ManagerService sequential = new ManagerService(clientService, accountService, transactionService);
+
+        List<String> accountIds = new ArrayList<>();
+        AccountType[] accountTypes = AccountType.values();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Client client = clientService.createClient(null, "Bench", "Client" + i, "bench" + i + "@bank.test", "password");
+            accountIds.add(accountService.createAccount(accountTypes[i % accountTypes.length], client.getClientId(), 100_000).getAccountId());
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < transactions; i++) {
+            String account = accountIds.get(random.nextInt(ACCOUNTS));
+            int kind = random.nextInt(3);
+            if (kind == 0) {
+                transactionService.MakeDeposit(account, 100 + random.nextInt(20_000), "bench");
+            } else if (kind == 1) {
+                transactionService.MakeWithdrawal(account, 1 + random.nextInt(50), "bench");
+            } else {
+                transactionService.makeTransfer(account, accountIds.get(random.nextInt(ACCOUNTS)), 1 + random.nextInt(50), "bench");
+            }
+        }
+
+        List<Transaction> suspicious = sequential.detectSuspiciousTransactions();
+        Map<AccountType, Long> accountStatistics = sequential.getAccountTypeStatistics();
+        double totalBalance = sequential.calculateTotalBalanceAllClients();
+        Map<TransactionType, Long> transactionStatistics = sequential.getTransactionStatistics();
+
+        System.out.printf("%-10s %12s %14s %10s %10s%n", "", "suspicious", "account types", "balance", "recount");
+        print("sequential", time(sequential, null), false, "");
+        for (int parallelism : new int[]{1, 4, 16, 64}) {
+            ManagerService pooled = new ManagerService(clientService, accountService, transactionService);
+            try (ReportEngine reports = pooled.startReports(parallelism)) {
+                boolean same = pooled.detectSuspiciousTransactions().equals(suspicious)
+                        && pooled.getAccountTypeStatistics().equals(accountStatistics)
+                        && pooled.calculateTotalBalanceAllClients() == totalBalance
+                        && reports.transactionStatistics().equals(transactionStatistics);
+                print("pool " + parallelism, time(pooled, reports), true, same ? "same results" : "DIFFERENT RESULTS");
+            }
+        }
+
+        ManagerService pooled = new ManagerService(clientService, accountService, transactionService);
+        try (ReportEngine reports = pooled.startReports(4)) {
+            List<Transaction> all = transactionService.getAllTransactions();
+            Thread deleter = new Thread(() -> {
+                for (int i = 0; i < all.size() / 3; i++) {
+                    transactionService.deleteTransaction(all.get(i).getTransactionId());
+                }
+            });
+            deleter.start();
+            int recounts = 0;
+            while (deleter.isAlive()) {
+                reports.transactionStatistics();
+                recounts++;
+            }
+            deleter.join();
+            System.out.printf("%d recounts during deletes and compactions; final recount matches the store: %s%n",
+                    recounts, reports.transactionStatistics().equals(sequential.getTransactionStatistics()));
+        }
+    }
+
+    // Mean milliseconds of each report over RUNS runs, after as many warm-up runs
+    private static double[] time(ManagerService manager, ReportEngine reports) {
+        double[] millis = new double[4];
+        for (int round = 0; round < 2; round++) {
+            for (int run = 0; run < RUNS; run++) {
+                long a = System.nanoTime();
+                manager.detectSuspiciousTransactions();
+                long b = System.nanoTime();
+                manager.getAccountTypeStatistics();
+                long c = System.nanoTime();
+                manager.calculateTotalBalanceAllClients();
+                long d = System.nanoTime();
+                if (reports != null) {
+                    reports.transactionStatistics();
+                }
+                long e = System.nanoTime();
+                if (round == 1) {
+                    millis[0] += (b - a) / 1e6 / RUNS;
+                    millis[1] += (c - b) / 1e6 / RUNS;
+                    millis[2] += (d - c) / 1e6 / RUNS;
+                    millis[3] += (e - d) / 1e6 / RUNS;
+                }
+            }
+        }
+        return millis;
+    }
+
+    private static void print(String label, double[] millis, boolean recounted, String note) {
+        System.out.printf("%-10s %9.1f ms %11.1f ms %7.1f ms %10s %s%n", label, millis[0], millis[1], millis[2],
+                recounted ? String.format("%.1f ms", millis[3]) : "-", note);
+    }
+}
@@ -0,0 +1,97 @@
+import models.Client;
+import models.enums.AccountType;
+import models.enums.DurabilityMode;
+import services.AccountService;
+import services.ClientService;
+import services.Journal;
+import services.TransactionService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Throughput and latency of transfers between 4 hot accounts, through the per-account locks and
+ * through the single-writer sequencer, with no journal and with group commit, from 1, 4 and 16
+ * threads. Latency is measured per call, from the caller's side, and includes the wait for
+ * durability.
+ * <pre>
+ * javac -d out/bench $(find src bench -name '*.java')
+ * java -cp out/bench SequencerBenchmark
+ * </pre>
+ */
+public class SequencerBenchmark {
+    private static final int HOT_ACCOUNTS = 4;
+    private static final int SEQUENCER_BUFFER_SIZE = 1024;
+
+    public static void main(String[] args) throws Exception {
+        for (DurabilityMode mode : new DurabilityMode[]{null, DurabilityMode.GROUP_COMMIT}) {
+            int transfers = mode == null ? 40_000 : 4_000;
+            for (int threads : new int[]{1, 4, 16}) {
+                run(mode, threads, transfers / threads, false);
+                run(mode, threads, transfers / threads, true);
+            }
+        }
+    }
+
+    private static void run(DurabilityMode mode, int threads, int transfersPerThread, boolean sequencer) throws Exception {
+        Path directory = mode == null ? null : Files.createTempDirectory("sequencer-bench");
+        Journal journal = directory == null ? Journal.disabled() : new Journal(directory.resolve("bank.journal"), mode, 0L);
+        ClientService clientService = new ClientService(journal);
+        AccountService accountService = new AccountService(clientService, journal);
+        TransactionService transactionService = new TransactionService(accountService, journal);
+        Client client = clientService.createClient(null, "Bench", "Client", "bench" + System.nanoTime() + "@bank.test", "password");
+        List<String> hot = new ArrayList<>();
+        for (int i = 0; i < HOT_ACCOUNTS; i++) {
+            hot.add(accountService.createAccount(AccountType.CURRENT, client.getClientId(), 1e9).getAccountId());
+        }
+        if (sequencer) {
+            transactionService.startSequencer(SEQUENCER_BUFFER_SIZE);
+        }
+
+        long[][] latencies = new long[threads][transfersPerThread];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers.add(executor.submit(() -> {
+                Random random = new Random(thread);
+                start.await();
+                for (int i = 0; i < transfersPerThread; i++) {
+                    long began = System.nanoTime();
+                    transactionService.makeTransfer(hot.get(random.nextInt(HOT_ACCOUNTS)), hot.get(random.nextInt(HOT_ACCOUNTS)), 1, "bench");
+                    latencies[thread][i] = System.nanoTime() - began;
+                }
+                return null;
+            }));
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        executor.shutdown();
+        if (sequencer) {
+            transactionService.getSequencer().close();
+        }
+        journal.close();
+        if (directory != null) {
+            Files.delete(directory.resolve("bank.journal"));
+            Files.delete(directory);
+        }
+
+        long[] sorted = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%-13s %2d threads %-9s %8.0f ops/s  p50 %7.1fus  p99 %8.1fus  max %8.1fus%n",
+                mode == null ? "no journal" : mode, threads, sequencer ? "sequencer" : "locks", sorted.length / seconds,
+                sorted[sorted.length / 2] / 1e3, sorted[(int) (sorted.length * 0.99)] / 1e3, sorted[sorted.length - 1] / 1e3);
+    }
+}
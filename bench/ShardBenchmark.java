@@ -0,0 +1,153 @@
+import models.Client;
+import models.TransactionRequest;
+import models.enums.AccountType;
+import models.enums.DurabilityMode;
+import services.AccountService;
+import services.ClientService;
+import services.Journal;
+import services.ManagerService;
+import services.PersistenceService;
+import services.TransactionService;
+import services.TransactionShards;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Two measurements of sharded execution.
+ * <p>
+ * Throughput: 8 client threads run random deposits, withdrawals and transfers (half of them
+ * transfers) over 10,000 accounts, through the account locks and then through 1, 2, 4 and 8 shards.
+ * Each configuration runs twice.
+ * <p>
+ * Checkpoint wait: with a journal and 4 shards kept busy with cross-shard transfers, 20 checkpoints
+ * are taken one after another and the longest one is reported. A checkpoint has to wait for every
+ * transfer in flight to settle, so this shows how long new work can hold it off.
+ * <pre>
+ * javac -d out/bench $(find src bench -name '*.java')
+ * java -cp out/bench ShardBenchmark
+ * </pre>
+ */
+public class ShardBenchmark {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 40_000;
+    private static final int ACCOUNTS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        for (int round = 0; round < 2; round++) {
+            for (int shards : new int[]{0, 1, 2, 4, 8}) {
+                throughput(shards);
+            }
+        }
+        checkpointWait();
+    }
+
+    private static void throughput(int shards) throws Exception {
+        ClientService clientService = new ClientService();
+        AccountService accountService = new AccountService(clientService);
+        TransactionService transactionService = new TransactionService(accountService);
+        List<String> accountIds = openAccounts(clientService, accountService, ACCOUNTS, 1_000_000);
+        if (shards > 0) {
+            transactionService.startShards(shards);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<>();
+        long started = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            workers.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    String account = accountIds.get(random.nextInt(ACCOUNTS));
+                    int kind = random.nextInt(4);
+                    if (kind == 0) {
+                        transactionService.MakeDeposit(account, 150, "bench");
+                    } else if (kind == 1) {
+                        transactionService.MakeWithdrawal(account, 100, "bench");
+                    } else {
+                        transactionService.makeTransfer(account, accountIds.get(random.nextInt(ACCOUNTS)), 50, "bench");
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        long elapsedNanos = System.nanoTime() - started;
+        executor.shutdown();
+        if (transactionService.getShards() != null) {
+            transactionService.getShards().close();
+        }
+        System.out.printf("%-9s %8.0f ops/s  balanced=%s%n", shards == 0 ? "locks" : shards + " shards",
+                THREADS * OPERATIONS_PER_THREAD / (elapsedNanos / 1e9), transactionService.trialBalance().isBalanced());
+    }
+
+    private static void checkpointWait() throws Exception {
+        Path directory = Files.createTempDirectory("shard-bench");
+        Journal journal = new Journal(directory.resolve("bank.journal"), DurabilityMode.GROUP_COMMIT, 0L);
+        ClientService clientService = new ClientService(journal);
+        AccountService accountService = new AccountService(clientService, journal);
+        TransactionService transactionService = new TransactionService(accountService, journal);
+        ManagerService managerService = new ManagerService(clientService, accountService, transactionService, journal);
+        PersistenceService persistence = new PersistenceService(directory.resolve("bank.snapshot"), journal,
+                clientService, accountService, transactionService, managerService);
+        persistence.recover();
+        List<String> accountIds = openAccounts(clientService, accountService, 64, 1e9);
+        TransactionShards shards = transactionService.startShards(4);
+
+        // Submitters keep up to 20,000 transfers queued, all between accounts on different shards
+        AtomicBoolean stop = new AtomicBoolean();
+        Semaphore window = new Semaphore(20_000);
+        ExecutorService submitters = Executors.newFixedThreadPool(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            submitters.execute(() -> {
+                Random random = new Random(seed);
+                while (!stop.get()) {
+                    String source = accountIds.get(random.nextInt(accountIds.size()));
+                    String destination = accountIds.get(random.nextInt(accountIds.size()));
+                    if (shards.shardOf(source) != shards.shardOf(destination)) {
+                        window.acquireUninterruptibly();
+                        shards.submit(TransactionRequest.transfer(source, destination, 1, "bench"))
+                                .whenComplete((transaction, error) -> window.release());
+                    }
+                }
+            });
+        }
+        Thread.sleep(500);
+        long longest = 0L;
+        for (int i = 0; i < 20; i++) {
+            long started = System.nanoTime();
+            persistence.checkpoint();
+            longest = Math.max(longest, System.nanoTime() - started);
+            Thread.sleep(20);
+        }
+        stop.set(true);
+        submitters.shutdown();
+        submitters.awaitTermination(1, TimeUnit.MINUTES);
+        shards.close();
+        System.out.printf("checkpoints under cross-shard load: longest %.1f ms  balanced=%s%n",
+                longest / 1e6, transactionService.trialBalance().isBalanced());
+        persistence.close();
+    }
+
+    private static List<String> openAccounts(ClientService clientService, AccountService accountService, int count, double balance) {
+        Client client = clientService.createClient(null, "Bench", "Client", "bench" + System.nanoTime() + "@bank.test", "password");
+        List<String> accountIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            accountIds.add(accountService.createAccount(AccountType.CURRENT, client.getClientId(), balance).getAccountId());
+        }
+        return accountIds;
+    }
+}
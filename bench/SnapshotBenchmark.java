@@ -0,0 +1,128 @@
+import models.Account;
+import models.Client;
+import models.enums.AccountType;
+import models.enums.DurabilityMode;
+import services.AccountService;
+import services.ClientService;
+import services.Journal;
+import services.ManagerService;
+import services.PersistenceService;
+import services.TransactionService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checkpoint and startup times with a snapshot. A bank of 1,000,000 accounts (four per client) and
+ * 1,000,000 ledger rows, unless given, is built through the services with an ASYNC journal and
+ * checkpointed. It is then recovered into fresh services from the snapshot alone, and again from the
+ * snapshot plus a journal tail of 200,000 deposits. Each recovery is checked against the bank it came
+ * from: same total balance and the same number of transactions.
+ * <pre>
+ * javac -d out/bench $(find src bench -name '*.java')
+ * java -Xmx4g -cp out/bench SnapshotBenchmark [accounts] [rows] [tailRecords]
+ * </pre>
+ */
+public class SnapshotBenchmark {
+    private static final int ACCOUNTS_PER_CLIENT = 4;
+
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int tailRecords = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+        Path directory = Files.createTempDirectory("snapshot-bench");
+
+        Bank bank = new Bank(directory);
+        bank.persistence.recover();
+        long started = System.nanoTime();
+        List<String> accountIds = new ArrayList<>(accounts);
+        AccountType[] accountTypes = AccountType.values();
+        Client client = null;
+        for (int i = 0; i < accounts; i++) {
+            if (i % ACCOUNTS_PER_CLIENT == 0) {
+                client = bank.clientService.createClient(null, "Bench", "Client" + i, "bench" + i + "@bank.test", "password");
+            }
+            accountIds.add(bank.accountService.createAccount(accountTypes[i % accountTypes.length], client.getClientId(), 10_000).getAccountId());
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < rows; i++) {
+            String account = accountIds.get(random.nextInt(accounts));
+            if (random.nextBoolean()) {
+                bank.transactionService.MakeDeposit(account, 100 + random.nextInt(20_000), "bench");
+            } else {
+                bank.transactionService.makeTransfer(account, accountIds.get(random.nextInt(accounts)), 1 + random.nextInt(50), "bench");
+            }
+        }
+        System.out.printf("built %d accounts and %d rows through the services in %.1f s%n", accounts, rows, seconds(started));
+
+        started = System.nanoTime();
+        bank.persistence.checkpoint();
+        System.out.printf("checkpoint in %.1f s, snapshot %d MB%n", seconds(started),
+                Files.size(directory.resolve("bank.snapshot")) >> 20);
+        long balance = totalBalance(bank);
+        int transactions = bank.transactionService.getAllTransactions().size();
+        bank.journal.close();
+        bank = null; // each recovery starts with only its own bank on the heap
+
+        bank = recover(directory, "snapshot only", balance, transactions);
+        for (int i = 0; i < tailRecords; i++) {
+            bank.transactionService.MakeDeposit(accountIds.get(random.nextInt(accounts)), 100, "tail");
+            balance += 10_000;
+            transactions++;
+        }
+        bank.journal.close(); // no checkpoint, so the deposits stay in the journal
+        System.out.printf("journal tail: %d records, %d MB%n", tailRecords, Files.size(directory.resolve("bank.journal")) >> 20);
+        bank = null;
+        recover(directory, "snapshot + tail", balance, transactions).journal.close();
+
+        Files.delete(directory.resolve("bank.journal"));
+        Files.delete(directory.resolve("bank.snapshot"));
+        Files.delete(directory);
+    }
+
+    private static Bank recover(Path directory, String label, long expectedBalance, int expectedTransactions) throws IOException {
+        System.gc();
+        Bank bank = new Bank(directory);
+        long started = System.nanoTime();
+        bank.persistence.recover();
+        double seconds = seconds(started);
+        boolean same = totalBalance(bank) == expectedBalance
+                && bank.transactionService.getAllTransactions().size() == expectedTransactions;
+        System.out.printf("recovered from %-15s in %.1f s  same state=%s%n", label, seconds, same);
+        return bank;
+    }
+
+    private static long totalBalance(Bank bank) {
+        long total = 0L;
+        for (Account account : bank.accountService.getAllAccounts()) {
+            total += account.getBalanceInCentimes();
+        }
+        return total;
+    }
+
+    private static double seconds(long startedNanos) {
+        return (System.nanoTime() - startedNanos) / 1e9;
+    }
+
+    private static final class Bank {
+        final Journal journal;
+        final ClientService clientService;
+        final AccountService accountService;
+        final TransactionService transactionService;
+        final PersistenceService persistence;
+
+        Bank(Path directory) throws IOException {
+            journal = new Journal(directory.resolve("bank.journal"), DurabilityMode.ASYNC, 0L);
+            clientService = new ClientService(journal);
+            accountService = new AccountService(clientService, journal);
+            transactionService = new TransactionService(accountService, journal);
+            ManagerService managerService = new ManagerService(clientService, accountService, transactionService, journal);
+            persistence = new PersistenceService(directory.resolve("bank.snapshot"), journal,
+                    clientService, accountService, transactionService, managerService);
+        }
+    }
+}
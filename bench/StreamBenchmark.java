@@ -0,0 +1,90 @@
+import models.Client;
+import models.Transaction;
+import models.enums.AccountType;
+import models.enums.TransactionType;
+import services.AccountService;
+import services.ClientService;
+import services.ManagerService;
+import services.TransactionService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Streaming the ledger against copying it into a list, over 1,000 accounts and 1,000,000 random
+ * transactions unless given. First the streams are checked against the lists: sequential and
+ * parallel, newest and oldest first, by type, and limit(10). Then, over three rounds: a count of large
+ * transactions through the list, the stream and a parallel stream, and an anyMatch on the stream.
+ * Last, the heap the list keeps alive once built.
+ * <pre>
+ * javac -d out/bench $(find src bench -name '*.java')
+ * java -Xmx2g -cp out/bench StreamBenchmark [transactions]
+ * </pre>
+ */
+public class StreamBenchmark {
+    private static final int ACCOUNTS = 1_000;
+
+    public static void main(String[] args) {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        ClientService clientService = new ClientService();
+        AccountService accountService = new AccountService(clientService);
+        TransactionService transactionService = new TransactionService(accountService);
+        ManagerService managerService = new ManagerService(clientService, accountService, transactionService);
+        List<String> accountIds = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Client client = clientService.createClient(null, "Bench", "Client" + i, "bench" + i + "@bank.test", "password");
+            accountIds.add(accountService.createAccount(AccountType.CURRENT, client.getClientId(), 100_000).getAccountId());
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < transactions; i++) {
+            String account = accountIds.get(random.nextInt(ACCOUNTS));
+            int kind = random.nextInt(3);
+            if (kind == 0) {
+                transactionService.MakeDeposit(account, 100 + random.nextInt(20_000), "bench");
+            } else if (kind == 1) {
+                transactionService.MakeWithdrawal(account, 1 + random.nextInt(50), "bench");
+            } else {
+                transactionService.makeTransfer(account, accountIds.get(random.nextInt(ACCOUNTS)), 1 + random.nextInt(50), "bench");
+            }
+        }
+
+        List<Transaction> newestFirst = managerService.getAllTransactions();
+        System.out.printf("newest first: sequential same=%s parallel same=%s%n",
+                managerService.streamAllTransactions().collect(Collectors.toList()).equals(newestFirst),
+                managerService.streamAllTransactions().parallel().collect(Collectors.toList()).equals(newestFirst));
+        System.out.printf("oldest first: sequential same=%s parallel same=%s%n",
+                transactionService.streamTransactions(false).collect(Collectors.toList()).equals(transactionService.getAllTransactions()),
+                transactionService.streamTransactions(false).parallel().collect(Collectors.toList()).equals(transactionService.getAllTransactions()));
+        System.out.printf("deposits same=%s  limit(10) same=%s%n",
+                transactionService.streamTransactions(TransactionType.DEPOSIT, true).collect(Collectors.toList())
+                        .equals(managerService.filterTransactionsByType(TransactionType.DEPOSIT)),
+                managerService.streamAllTransactions().limit(10).collect(Collectors.toList()).equals(newestFirst.subList(0, 10)));
+        newestFirst = null;
+
+        Predicate<Transaction> large = transaction -> transaction.getAmountInCentimes() > 1_500_000;
+        for (int round = 0; round < 3; round++) {
+            long a = System.nanoTime();
+            long fromList = managerService.getAllTransactions().stream().filter(large).count();
+            long b = System.nanoTime();
+            long streamed = managerService.streamAllTransactions().filter(large).count();
+            long c = System.nanoTime();
+            long parallel = managerService.streamAllTransactions().parallel().filter(large).count();
+            long d = System.nanoTime();
+            boolean any = managerService.streamAllTransactions().anyMatch(large);
+            long e = System.nanoTime();
+            System.out.printf("count: list %6.1f ms  stream %6.1f ms  parallel %6.1f ms  anyMatch %.2f ms  same=%s%n",
+                    (b - a) / 1e6, (c - b) / 1e6, (d - c) / 1e6, (e - d) / 1e6, fromList == streamed && streamed == parallel && any);
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        List<Transaction> held = managerService.getAllTransactions();
+        System.gc();
+        long after = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("the list of %d transactions holds %d MB of heap%n", held.size(), (after - before) >> 20);
+    }
+}
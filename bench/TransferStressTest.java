@@ -0,0 +1,141 @@
+import models.Account;
+import models.Client;
+import models.enums.AccountType;
+import services.AccountService;
+import services.ClientService;
+import services.TransactionService;
+import utils.Money;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Many threads moving money between a small set of accounts at once, then checking that nothing was
+ * lost, created or overdrawn. Transfers are drawn in both directions between the same accounts, so a
+ * lock ordering mistake shows up as a deadlock (reported after a timeout).
+ * <p>
+ * Checked at the end: the bank's total equals the opening total plus what the deposits added and
+ * minus what the withdrawals took; no balance is negative; each client's balance is the sum of its
+ * accounts; the double-entry ledger balances; and no client aggregate had drifted.
+ * <pre>
+ * javac -d out/bench $(find src bench -name '*.java')
+ * java -cp out/bench TransferStressTest [threads] [operationsPerThread] [accounts]
+ * </pre>
+ * Defaults: 32 threads, 50,000 operations each, 64 accounts over 8 clients. Exits with status 1 if a
+ * check fails.
+ */
+public class TransferStressTest {
+    private static final double OPENING_BALANCE = 1000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int operationsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        int accountCount = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        ClientService clientService = new ClientService();
+        AccountService accountService = new AccountService(clientService);
+        TransactionService transactionService = new TransactionService(accountService);
+        List<Client> clients = new ArrayList<>();
+        List<String> accountIds = new ArrayList<>();
+        for (int i = 0; i < accountCount; i++) {
+            if (i % 8 == 0) {
+                clients.add(clientService.createClient(null, "Stress", "Client" + i, "stress" + i + "@bank.test", "password"));
+            }
+            Client client = clients.get(clients.size() - 1);
+            accountIds.add(accountService.createAccount(AccountType.CURRENT, client.getClientId(), OPENING_BALANCE).getAccountId());
+        }
+        long openingTotal = totalBalance(accountService);
+
+        AtomicLong deposited = new AtomicLong();
+        AtomicLong withdrawn = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            executor.execute(() -> {
+                Random random = new Random(seed);
+                try {
+                    start.await();
+                    for (int i = 0; i < operationsPerThread; i++) {
+                        String source = accountIds.get(random.nextInt(accountCount));
+                        String destination = accountIds.get(random.nextInt(accountCount));
+                        double amount = 1 + random.nextInt(30_000) / 100.0;
+                        try {
+                            int kind = random.nextInt(10);
+                            if (kind == 0) {
+                                transactionService.MakeDeposit(source, amount, "stress");
+                                deposited.addAndGet(Money.fromAmount(amount));
+                            } else if (kind == 1) {
+                                transactionService.MakeWithdrawal(source, amount, "stress");
+                                withdrawn.addAndGet(Money.fromAmount(amount));
+                            } else {
+                                transactionService.makeTransfer(source, destination, amount, "stress");
+                            }
+                        } catch (ArithmeticException e) {
+                            // Insufficient funds: refused, nothing moved
+                            rejected.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        if (!done.await(5, TimeUnit.MINUTES)) {
+            fail("Still running after 5 minutes; the transfer locks have probably deadlocked");
+        }
+        long elapsedNanos = System.nanoTime() - started;
+        executor.shutdown();
+
+        long expected = openingTotal + deposited.get() - withdrawn.get();
+        long actual = totalBalance(accountService);
+        System.out.printf("%d threads x %d operations over %d accounts in %d ms (%d refused)%n",
+                threads, operationsPerThread, accountCount, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), rejected.get());
+        check(actual == expected, "total balance " + Money.toAmount(actual) + ", expected " + Money.toAmount(expected));
+        for (Account account : accountService.getAllAccounts()) {
+            check(account.getBalanceInCentimes() >= 0, "account " + account.getAccountId() + " is overdrawn");
+        }
+        for (Client client : clients) {
+            long sum = 0L;
+            for (Account account : client.getAccounts()) {
+                sum += account.getBalanceInCentimes();
+            }
+            check(client.getBalanceInCentimes() == sum, "client " + client.getClientId() + " balance doesn't match its accounts");
+        }
+        check(transactionService.trialBalance().isBalanced(), "the ledger doesn't balance");
+        check(transactionService.rebuildAggregates() == 0, "client aggregates had drifted");
+        System.out.println("Money conserved: " + Money.toAmount(actual));
+    }
+
+    private static long totalBalance(AccountService accountService) {
+        long total = 0L;
+        for (Account account : accountService.getAllAccounts()) {
+            total += account.getBalanceInCentimes();
+        }
+        return total;
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            fail(failure);
+        }
+    }
+
+    private static void fail(String message) {
+        System.err.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
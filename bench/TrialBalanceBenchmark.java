@@ -0,0 +1,132 @@
+import models.Account;
+import models.Client;
+import models.TrialBalance;
+import models.enums.AccountType;
+import services.AccountService;
+import services.ClientService;
+import services.TransactionService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Trial balance over 100,000 accounts and a ledger of random deposits and transfers (5,000,000 unless
+ * given, about 10,200,000 postings with the opening balances), five times in a row. Then 200 trial
+ * balances are taken while 4 threads deposit, withdraw and transfer over 200 accounts, and none may
+ * come out unbalanced; a balance changed behind the ledger's back must be reported as that one
+ * account. Last, single-account deposit throughput, 2,000,000 per run, three runs.
+ * <pre>
+ * javac -d out/bench $(find src bench -name '*.java')
+ * java -Xmx4g -cp out/bench TrialBalanceBenchmark [operations]
+ * </pre>
+ */
+public class TrialBalanceBenchmark {
+    private static final int ACCOUNTS = 100_000;
+    private static final int WRITERS = 4;
+    private static final int CHECKS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        fullLedger(operations);
+        underLoad();
+        for (int run = 0; run < 3; run++) {
+            deposits(2_000_000);
+        }
+    }
+
+    private static void fullLedger(int operations) {
+        ClientService clientService = new ClientService();
+        AccountService accountService = new AccountService(clientService);
+        TransactionService transactionService = new TransactionService(accountService);
+        List<String> accountIds = openAccounts(clientService, accountService, ACCOUNTS, 1_000_000);
+        Random random = new Random(1);
+        for (int i = 0; i < operations; i++) {
+            String account = accountIds.get(random.nextInt(ACCOUNTS));
+            if ((i & 3) == 0) {
+                transactionService.MakeDeposit(account, 10, "bench");
+            } else {
+                transactionService.makeTransfer(account, accountIds.get(random.nextInt(ACCOUNTS)), 1, "bench");
+            }
+        }
+        for (int run = 0; run < 5; run++) {
+            long started = System.nanoTime();
+            TrialBalance trialBalance = transactionService.trialBalance();
+            long elapsedNanos = System.nanoTime() - started;
+            System.out.printf("%d postings in %d ms (%.0fM postings/s)  balanced=%s%n", trialBalance.getPostingCount(),
+                    elapsedNanos / 1_000_000, trialBalance.getPostingCount() / (elapsedNanos / 1e3), trialBalance.isBalanced());
+        }
+    }
+
+    private static void underLoad() throws InterruptedException {
+        ClientService clientService = new ClientService();
+        AccountService accountService = new AccountService(clientService);
+        TransactionService transactionService = new TransactionService(accountService);
+        List<String> accountIds = openAccounts(clientService, accountService, 200, 1000);
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < WRITERS; t++) {
+            long seed = t;
+            Thread writer = new Thread(() -> {
+                Random random = new Random(seed);
+                while (!stop.get()) {
+                    String account = accountIds.get(random.nextInt(accountIds.size()));
+                    int kind = random.nextInt(3);
+                    try {
+                        if (kind == 0) {
+                            transactionService.MakeDeposit(account, 1 + random.nextInt(100), "bench");
+                        } else if (kind == 1) {
+                            transactionService.MakeWithdrawal(account, 1 + random.nextInt(100), "bench");
+                        } else {
+                            transactionService.makeTransfer(account, accountIds.get(random.nextInt(accountIds.size())), 1 + random.nextInt(100), "bench");
+                        }
+                    } catch (ArithmeticException e) {
+                        // Insufficient funds: refused, nothing moved
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        int unbalanced = 0;
+        for (int i = 0; i < CHECKS; i++) {
+            if (!transactionService.trialBalance().isBalanced()) {
+                unbalanced++;
+            }
+        }
+        stop.set(true);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        System.out.printf("%d trial balances under %d writers: %d unbalanced, final balanced=%s%n",
+                CHECKS, WRITERS, unbalanced, transactionService.trialBalance().isBalanced());
+
+        Account tampered = accountService.findAccountById(accountIds.get(7));
+        tampered.setBalanceInCentimes(tampered.getBalanceInCentimes() + 1);
+        List<String> mismatched = transactionService.trialBalance().getMismatchedAccountIds();
+        System.out.printf("balance changed outside the ledger: reported %s%n",
+                mismatched.size() == 1 && mismatched.get(0).equals(tampered.getAccountId()) ? "exactly that account" : mismatched);
+    }
+
+    private static void deposits(int count) {
+        ClientService clientService = new ClientService();
+        AccountService accountService = new AccountService(clientService);
+        TransactionService transactionService = new TransactionService(accountService);
+        String accountId = openAccounts(clientService, accountService, 1, 0).get(0);
+        long started = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            transactionService.MakeDeposit(accountId, 1, "bench");
+        }
+        System.out.printf("single-account deposits: %.0f/s%n", count / ((System.nanoTime() - started) / 1e9));
+    }
+
+    private static List<String> openAccounts(ClientService clientService, AccountService accountService, int count, double balance) {
+        Client client = clientService.createClient(null, "Bench", "Client", "bench" + System.nanoTime() + "@bank.test", "password");
+        List<String> accountIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            accountIds.add(accountService.createAccount(AccountType.CURRENT, client.getClientId(), balance).getAccountId());
+        }
+        return accountIds;
+    }
+}
@@ -3,19 +3,38 @@ import controllers.AuthController;
 import controllers.ClientController;
 import controllers.ManagerController;
 import controllers.TransactionController;
+import models.enums.DurabilityMode;
 import services.*;
+import utils.CachedTimeSource;
+import utils.Clock;
 import utils.DataInitializer;
+import utils.Ids;
+import utils.TimeOrderedIdGenerator;
 import view.MainMenu;
 import view.ClientMenu;
 import view.ManagerMenu;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
 public class Main {
     public static void main(String[] args) {
         try {
-            ClientService clientService = new ClientService();
-            AccountService accountService = new AccountService(clientService);
-            TransactionService transactionService = new TransactionService(accountService);
-            ManagerService managerService = new ManagerService(clientService, accountService, transactionService);
+            // -Dbank.clockResolutionMicros=<n> stamps transactions from a clock cached every n microseconds
+            long clockResolutionMicros = Long.getLong("bank.clockResolutionMicros", 0L);
+            if (clockResolutionMicros > 0) {
+                Clock.setSource(new CachedTimeSource(clockResolutionMicros));
+            }
+            // -Dbank.nodeId (0-16383) keeps the IDs of several running instances apart
+            Ids.setGenerator(new TimeOrderedIdGenerator(Integer.getInteger("bank.nodeId", 0)));
+            Path dataDirectory = dataDirectory();
+            Journal journal = dataDirectory == null ? Journal.disabled() : openJournal(dataDirectory);
+            ClientService clientService = new ClientService(journal);
+            AccountService accountService = new AccountService(clientService, journal);
+            TransactionService transactionService = new TransactionService(accountService, journal, idempotencyCache());
+            ManagerService managerService = new ManagerService(clientService, accountService, transactionService, journal);
             AuthService authService = new AuthService(clientService, managerService);
 
 
@@ -30,14 +49,88 @@ public class Main {
 
             System.out.println("Initializing Bank Management System...");
 
-            DataInitializer.initializeFakeData(managerService, clientService, accountService, transactionService);
+            PersistenceService persistence = null;
+            boolean recovered = false;
+            if (dataDirectory != null) {
+                persistence = new PersistenceService(dataDirectory.resolve("bank.snapshot"), journal,
+                        clientService, accountService, transactionService, managerService);
+                long started = System.nanoTime();
+                recovered = persistence.recover();
+                if (recovered) {
+                    System.out.println("Restored saved state in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+                }
+            }
+            // Demo data only seeds a brand-new bank; it is journaled like any other change
+            if (!recovered) {
+                DataInitializer.initializeFakeData(managerService, clientService, accountService, transactionService);
+            }
+            if (persistence != null) {
+                persistence.startCheckpoints(Long.parseLong(System.getProperty("bank.checkpointSeconds", "300")));
+            }
+            // -Dbank.sequencerBufferSize=<power of two> runs deposits, withdrawals and transfers on one writer thread
+            int sequencerBufferSize = Integer.parseInt(System.getProperty("bank.sequencerBufferSize", "0"));
+            if (sequencerBufferSize > 0) {
+                transactionService.startSequencer(sequencerBufferSize);
+            }
+            // -Dbank.shards=<n> instead partitions the accounts over n shards, each with its own thread
+            int shardCount = Integer.parseInt(System.getProperty("bank.shards", "0"));
+            if (shardCount > 0) {
+                transactionService.startShards(shardCount);
+            }
+            // -Dbank.reportParallelism=<n> sizes the manager reports' own thread pool; 0 runs them on the menu thread
+            int reportParallelism = Integer.parseInt(System.getProperty("bank.reportParallelism",
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+            if (reportParallelism > 0) {
+                managerService.startReports(reportParallelism);
+            }
 
 
             mainMenu.displayMainMenu();
+            if (transactionService.getSequencer() != null) {
+                transactionService.getSequencer().close();
+            }
+            if (transactionService.getShards() != null) {
+                transactionService.getShards().close();
+            }
+            if (managerService.getReports() != null) {
+                managerService.getReports().close();
+            }
+            if (persistence != null) {
+                persistence.close();
+            }
 
         } catch (Exception e) {
             System.out.println("Error starting the application: " + e.getMessage());
         }
     }
-}
 
+    /**
+     * State is kept under -Dbank.dataDir when it is set; without it the bank runs in memory only and
+     * starts from the demo data every time.
+     */
+    private static Path dataDirectory() {
+        String directory = System.getProperty("bank.dataDir");
+        return directory == null || directory.trim().isEmpty() ? null : Paths.get(directory);
+    }
+
+    /**
+     * Remembers the last -Dbank.idempotencyKeys keys (default 100000) for -Dbank.idempotencyHours (default 24).
+     */
+    private static IdempotencyCache idempotencyCache() {
+        int capacity = Integer.parseInt(System.getProperty("bank.idempotencyKeys", String.valueOf(IdempotencyCache.DEFAULT_CAPACITY)));
+        String hours = System.getProperty("bank.idempotencyHours");
+        return new IdempotencyCache(capacity, hours == null ? IdempotencyCache.DEFAULT_TIME_TO_LIVE : Duration.ofHours(Long.parseLong(hours)));
+    }
+
+    /**
+     * -Dbank.durability=SYNC|GROUP_COMMIT|ASYNC (default GROUP_COMMIT) and -Dbank.commitWindowMicros
+     * (default 0: each fsync takes whatever arrived while the previous one ran).
+     */
+    private static Journal openJournal(Path dataDirectory) throws IOException {
+        DurabilityMode mode = DurabilityMode.valueOf(System.getProperty("bank.durability", DurabilityMode.GROUP_COMMIT.name()));
+        long commitWindowMicros = Long.parseLong(System.getProperty("bank.commitWindowMicros", "0"));
+        Journal journal = new Journal(dataDirectory.resolve("bank.journal"), mode, commitWindowMicros);
+        Runtime.getRuntime().addShutdownHook(new Thread(journal::flush));
+        return journal;
+    }
+}
@@ -3,12 +3,12 @@ package controllers;
 import models.Client;
 import models.Account;
 import models.Transaction;
+import models.TransactionPage;
 import models.enums.TransactionType;
 import services.ClientService;
 import services.AuthService;
 import services.TransactionService;
 
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -35,6 +35,12 @@ public class ClientController {
                 .orElseThrow(() -> new IllegalStateException("No client logged in"));
     }
 
+    public TransactionPage viewTransactionHistoryPage(String cursor, int pageSize) {
+        return authService.getCurrentClient()
+                .map(client -> clientService.getClientTransactionPage(client.getClientId(), cursor, pageSize))
+                .orElseThrow(() -> new IllegalStateException("No client logged in"));
+    }
+
     public List<Transaction> filterTransactionsByType(TransactionType type) {
         return authService.getCurrentClient()
                 .map(client -> clientService.filterTransactionsByType(client.getClientId(), type))
@@ -47,9 +53,9 @@ public class ClientController {
                 .orElseThrow(() -> new IllegalStateException("No client logged in"));
     }
 
-    public List<Transaction> filterTransactionsByDate(LocalDateTime startDate, LocalDateTime endDate) {
+    public List<Transaction> filterTransactionsByDate(long startMicros, long endMicros) {
         return authService.getCurrentClient()
-                .map(client -> clientService.filterTransactionsByDate(client.getClientId(), startDate, endDate))
+                .map(client -> clientService.filterTransactionsByDate(client.getClientId(), startMicros, endMicros))
                 .orElseThrow(() -> new IllegalStateException("No client logged in"));
     }
 
@@ -4,6 +4,7 @@ import models.Manager;
 import models.Client;
 import models.Account;
 import models.Transaction;
+import models.TransactionPage;
 import models.enums.AccountType;
 import models.enums.TransactionType;
 import models.enums.DepartmentType;
@@ -12,7 +13,6 @@ import services.ClientService;
 import services.AccountService;
 import services.AuthService;
 
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -107,6 +107,18 @@ public class ManagerController {
         return managerService.getAllTransactions();
     }
 
+    public TransactionPage viewClientTransactionsPage(String clientId, String cursor, int pageSize) {
+        authService.getCurrentManager()
+                .orElseThrow(() -> new IllegalStateException("No manager logged in"));
+        return managerService.getClientTransactionsPage(clientId, cursor, pageSize);
+    }
+
+    public TransactionPage viewAllTransactionsPage(String cursor, int pageSize) {
+        authService.getCurrentManager()
+                .orElseThrow(() -> new IllegalStateException("No manager logged in"));
+        return managerService.getAllTransactionsPage(cursor, pageSize);
+    }
+
     public List<Transaction> filterTransactionsByType(TransactionType type) {
         authService.getCurrentManager()
                 .orElseThrow(() -> new IllegalStateException("No manager logged in"));
@@ -119,10 +131,10 @@ public class ManagerController {
         return managerService.filterTransactionsByAmount(minAmount, maxAmount);
     }
 
-    public List<Transaction> filterTransactionsByDate(LocalDateTime startDate, LocalDateTime endDate) {
+    public List<Transaction> filterTransactionsByDate(long startMicros, long endMicros) {
         authService.getCurrentManager()
                 .orElseThrow(() -> new IllegalStateException("No manager logged in"));
-        return managerService.filterTransactionsByDate(startDate, endDate);
+        return managerService.filterTransactionsByDate(startMicros, endMicros);
     }
 
     // Suspicious Transaction Detection
@@ -170,4 +182,16 @@ public class ManagerController {
         return managerService.getAccountTypeStatistics();
     }
 
+    public List<Client> getTopClientsByBalance(int limit) {
+        authService.getCurrentManager()
+                .orElseThrow(() -> new IllegalStateException("No manager logged in"));
+        return managerService.getTopClientsByBalance(limit);
+    }
+
+    public int getClientBalanceRank(String clientId) {
+        authService.getCurrentManager()
+                .orElseThrow(() -> new IllegalStateException("No manager logged in"));
+        return managerService.getClientBalanceRank(clientId);
+    }
+
 }
@@ -7,7 +7,6 @@ import services.AccountService;
 import services.AuthService;
 import services.TransactionService;
 
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Predicate;
@@ -41,12 +40,7 @@ public class TransactionController {
             }
         }
 
-        // Create deposit transaction
-        Transaction transaction = new Transaction(TransactionType.DEPOSIT, amount, description, account);
-        account.deposit(amount);
-        account.addTransaction(transaction);
-
-        return transaction;
+        return transactionService.MakeDeposit(accountId, amount, description);
     }
 
     public Transaction makeWithdrawal(String accountId, double amount, String description) {
@@ -66,17 +60,8 @@ public class TransactionController {
             }
         }
 
-        // Validate sufficient balance
-        if (account.getBalance() < amount) {
-            throw new ArithmeticException("Insufficient balance for withdrawal");
-        }
-
-        // Create withdrawal transaction
-        Transaction transaction = new Transaction(TransactionType.WITHDRAWAL, amount, description, account);
-        account.withdraw(amount);
-        account.addTransaction(transaction);
-
-        return transaction;
+        // Balance check and update happen under the account lock in TransactionService
+        return transactionService.MakeWithdrawal(accountId, amount, description);
     }
 
     public Transaction makeTransfer(String fromAccountId, String toAccountId, double amount, String description) {
@@ -85,7 +70,6 @@ public class TransactionController {
         }
 
         Account fromAccount = accountService.findAccountById(fromAccountId);
-        Account toAccount = accountService.findAccountById(toAccountId);
 
         // Validate ownership for clients
         if (authService.isClient()) {
@@ -97,42 +81,12 @@ public class TransactionController {
             }
         }
 
-        // Validate sufficient balance
-        if (fromAccount.getBalance() < amount) {
-            throw new ArithmeticException("Insufficient balance for transfer");
-        }
-
-        // Create transfer transaction
-        Transaction transaction = new Transaction(TransactionType.TRANSFER, amount, description, fromAccount, toAccount);
-
-        // Update balances
-        fromAccount.withdraw(amount);
-        toAccount.deposit(amount);
-
-        // Add transaction to both accounts
-        fromAccount.addTransaction(transaction);
-
-        return transaction;
+        // Both accounts are locked in a consistent order by TransactionService
+        return transactionService.makeTransfer(fromAccountId, toAccountId, amount, description);
     }
 
     public List<Transaction> getTransactionsByAccount(String accountId) {
-        if (!authService.isLoggedIn()) {
-            throw new IllegalStateException("User must be logged in");
-        }
-
-        Account account = accountService.findAccountById(accountId);
-
-        // Validate ownership for clients
-        if (authService.isClient()) {
-            boolean ownsAccount = authService.getCurrentClient()
-                    .map(client -> client.getAccounts().contains(account))
-                    .orElse(false);
-            if (!ownsAccount) {
-                throw new IllegalStateException("Client can only access their own accounts");
-            }
-        }
-
-        return account.getTransactions();
+        return findAccessibleAccount(accountId).getTransactions();
     }
 
     public List<Transaction> filterTransactions(String accountId, Predicate<Transaction> filter) {
@@ -141,11 +95,10 @@ public class TransactionController {
                 .collect(Collectors.toList());
     }
 
-    public List<Transaction> getTransactionsByDateRange(String accountId, LocalDateTime startDate, LocalDateTime endDate) {
-        return filterTransactions(accountId, transaction -> {
-            LocalDateTime transactionDate = transaction.getDate();
-            return transactionDate.isAfter(startDate) && transactionDate.isBefore(endDate);
-        });
+    // Epoch microseconds; start inclusive, end exclusive, like every other date-range query
+    public List<Transaction> getTransactionsByDateRange(String accountId, long startMicros, long endMicros) {
+        findAccessibleAccount(accountId);
+        return transactionService.getTransactionsByDateRange(accountId, startMicros, endMicros);
     }
 
     public List<Transaction> getTransactionsByType(String accountId, TransactionType type) {
@@ -153,13 +106,32 @@ public class TransactionController {
     }
 
     public List<Transaction> getTransactionsByAmountRange(String accountId, double minAmount, double maxAmount) {
-        return filterTransactions(accountId, transaction ->
-            transaction.getAmount() >= minAmount && transaction.getAmount() <= maxAmount);
+        findAccessibleAccount(accountId);
+        return transactionService.getTransactionsByAmountRange(accountId, minAmount, maxAmount);
     }
 
     public List<Transaction> test(double amount) {
         return transactionService.getTransactionByGivenAmount(amount);
     }
 
+    private Account findAccessibleAccount(String accountId) {
+        if (!authService.isLoggedIn()) {
+            throw new IllegalStateException("User must be logged in");
+        }
+
+        Account account = accountService.findAccountById(accountId);
+
+        // Validate ownership for clients
+        if (authService.isClient()) {
+            boolean ownsAccount = authService.getCurrentClient()
+                    .map(client -> client.getAccounts().contains(account))
+                    .orElse(false);
+            if (!ownsAccount) {
+                throw new IllegalStateException("Client can only access their own accounts");
+            }
+        }
+        return account;
+    }
+
 
 }
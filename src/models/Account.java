@@ -2,22 +2,31 @@ package models;
 
 
 import models.enums.AccountType;
-import java.util.ArrayList;
+import utils.Ids;
+import utils.Money;
+
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Account {
     private String accountId;
     private AccountType accountType;
-    private double balance;
-    private List<Transaction> transactions;
+    private volatile long balance; // in centimes, written under lock
+    private long debitsInFlight; // cross-shard transfers debited but not yet settled, under lock
+    private volatile TransactionHistory history = TransactionHistory.EMPTY; // postings, owned by the ledger
     private Client client;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TransactionTotals totals = new TransactionTotals();
 
     public Account(AccountType accountType, Client client, double initialBalance) {
-        this.accountId = UUID.randomUUID().toString();
+        this(Ids.next(), accountType, client, Money.fromAmount(initialBalance));
+    }
+
+    // Rebuilds a saved account, with its balance in centimes
+    public Account(String accountId, AccountType accountType, Client client, long balance) {
+        this.accountId = accountId;
         this.accountType = accountType;
-        this.balance = initialBalance;
-        this.transactions = new ArrayList<>();
+        this.balance = balance;
         this.client = client;
     }
 
@@ -38,22 +47,80 @@ public class Account {
     }
 
     public double getBalance() {
+        return Money.toAmount(balance);
+    }
+
+    public long getBalanceInCentimes() {
         return balance;
     }
 
     public void setBalance(double balance) {
-        if (balance <= 0) {
+        setBalanceInCentimes(Money.fromAmount(balance));
+    }
+
+    public void setBalanceInCentimes(long balance) {
+        if (balance < 0) {
             throw new IllegalArgumentException("The balance can't be negative");
         }
-        this.balance = balance;
+        lock.lock();
+        try {
+            long delta = balance - this.balance;
+            this.balance = balance;
+            client.adjustBalance(delta);
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * Returns a snapshot of this account's transactions, oldest first.
+     */
     public List<Transaction> getTransactions() {
-        return transactions;
+        return history.subList(0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Number of history positions; a deleted transaction keeps its position until the ledger compacts.
+     */
+    public int getTransactionCount() {
+        return history.size();
+    }
+
+    /**
+     * The transaction at {@code index}, oldest first, or null if it was deleted or the history has since shrunk.
+     */
+    public Transaction getTransaction(int index) {
+        return history.get(index);
     }
 
-    public void setTransactions(List<Transaction> transactions) {
-        this.transactions = transactions;
+    /**
+     * Index of the first transaction stamped at or after {@code timestamp} (epoch microseconds; the count if none).
+     */
+    public int lowerBound(long timestamp) {
+        return history.lowerBound(timestamp);
+    }
+
+    /**
+     * Transactions stamped in [from, to) (epoch microseconds), oldest first.
+     */
+    public List<Transaction> getTransactionsBetween(long from, long to) {
+        int start = history.lowerBound(from);
+        return history.subList(start, Math.max(start, history.lowerBound(to)));
+    }
+
+    /**
+     * Attaches the ledger's posting view for this account; called once the account first transacts.
+     */
+    public void setHistory(TransactionHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * Per-account lock guarding the balance. Operations spanning two accounts
+     * must acquire both locks in account ID order (see TransactionService#makeTransfer).
+     */
+    public ReentrantLock getLock() {
+        return lock;
     }
 
     public Client getClient() {
@@ -64,24 +131,53 @@ public class Account {
         this.client = client;
     }
 
-    public void addTransaction(Transaction transaction) {
-        this.transactions.add(transaction);
+    public TransactionTotals getTotals() {
+        return totals;
     }
 
-    public void deposit(double amount) {
-        if (amount <= 0) {
+    public void deposit(long amountInCentimes) {
+        if (amountInCentimes <= 0) {
             throw new IllegalArgumentException("The minimum amount to deposit is 100 DH.");
         }
-        balance += amount;
+        lock.lock();
+        try {
+            balance = Money.add(balance, amountInCentimes);
+            client.adjustBalance(amountInCentimes);
+        } finally {
+            lock.unlock();
+        }
     }
-    public void withdraw(double amount) {
-        balance -= amount;
+
+    // Counts a cross-shard transfer from this account between its debit and its credit or refund;
+    // caller holds the lock
+    public void addDebitInFlight(int delta) {
+        debitsInFlight += delta;
+    }
+
+    public boolean hasDebitInFlight() {
+        return debitsInFlight > 0;
+    }
+
+    public void withdraw(long amountInCentimes) {
+        if (amountInCentimes <= 0) {
+            throw new IllegalArgumentException("The withdrawal amount must be positive");
+        }
+        lock.lock();
+        try {
+            if (balance < amountInCentimes) {
+                throw new ArithmeticException("Insufficient balance for withdrawal");
+            }
+            balance -= amountInCentimes;
+            client.adjustBalance(-amountInCentimes);
+        } finally {
+            lock.unlock();
+        }
     }
 
 
 
     @Override
     public String toString() {
-        return "Account ID# " + accountId + " | Type: " + accountType + " | Balance: " + balance + "$| Transactions: " + transactions.size() + " | Client ID# " + client.getClientId();
+        return "Account ID# " + accountId + " | Type: " + accountType + " | Balance: " + Money.format(balance) + "$| Transactions: " + totals.getCount() + " | Client ID# " + client.getClientId();
     }
 }
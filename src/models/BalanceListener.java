@@ -0,0 +1,9 @@
+package models;
+
+/**
+ * Told every time a client's total balance changes, after the change. Calls may come from several
+ * threads at once and in any order, so listeners read the balance again rather than trust a delta.
+ */
+public interface BalanceListener {
+    void balanceChanged(Client client);
+}
@@ -1,19 +1,31 @@
 package models;
 
 import models.enums.Role;
+import models.enums.TransactionType;
+import utils.Ids;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Client extends Person {
     private String clientId;
     private List<Account> accounts;
+    // Aggregates over this client's accounts, kept in step by Account and TransactionService
+    private final TransactionTotals totals = new TransactionTotals();
+    // Transfers between two of its accounts, which the sum of their totals counts twice
+    private final TransactionTotals sharedTransfers = new TransactionTotals();
+    private final LongAdder balance = new LongAdder(); // in centimes
+    private volatile BalanceListener balanceListener;
 
     public Client(String firstName, String lastName, String email, String password) {
+        this(Ids.next(), firstName, lastName, email, password);
+    }
+
+    public Client(String clientId, String firstName, String lastName, String email, String password) {
         super(firstName, lastName, email, password, Role.CLIENT);
-        this.clientId = UUID.randomUUID().toString();
-        this.accounts = new ArrayList<>();
+        this.clientId = clientId;
+        this.accounts = new CopyOnWriteArrayList<>();
     }
 
 
@@ -29,16 +41,109 @@ public class Client extends Person {
         return accounts;
     }
 
-    public void setAccounts(List<Account> accounts) {
-        this.accounts = accounts;
+    public synchronized void setAccounts(List<Account> accounts) {
+        this.accounts = new CopyOnWriteArrayList<>(accounts);
+        totals.reset();
+        sharedTransfers.reset();
+        balance.reset();
+        for (Account account : this.accounts) {
+            totals.add(account.getTotals());
+            balance.add(account.getBalanceInCentimes());
+            for (Transaction transaction : account.getTransactions()) {
+                if (transaction.getSourceAccount() == account && isSharedTransfer(transaction)) {
+                    sharedTransfers.record(transaction.getTransactionType(), transaction.getAmountInCentimes());
+                }
+            }
+        }
+        balanceChanged();
     }
 
-    public void addAccount(Account account) {
+    // Synchronized with removeAccount so two accounts leaving at once can't both take back a transfer between them
+    public synchronized void addAccount(Account account) {
         this.accounts.add(account);
+        totals.add(account.getTotals());
+        for (Transaction transaction : account.getTransactions()) {
+            if (isSharedTransfer(transaction)) {
+                sharedTransfers.record(transaction.getTransactionType(), transaction.getAmountInCentimes());
+            }
+        }
+        balance.add(account.getBalanceInCentimes());
+        balanceChanged();
+    }
+
+    // Call it holding the account's lock
+    public synchronized void removeAccount(Account account) {
+        for (Transaction transaction : account.getTransactions()) {
+            if (isSharedTransfer(transaction)) {
+                sharedTransfers.unrecord(transaction.getTransactionType(), transaction.getAmountInCentimes());
+            }
+        }
+        if (this.accounts.remove(account)) {
+            totals.subtract(account.getTotals());
+            balance.add(-account.getBalanceInCentimes());
+            balanceChanged();
+        }
+    }
+
+    // A transfer between two different accounts, both currently this client's
+    public boolean isSharedTransfer(Transaction transaction) {
+        Account source = transaction.getSourceAccount();
+        Account destination = transaction.getDestinationAccount();
+        return destination != null && destination != source && accounts.contains(source) && accounts.contains(destination);
+    }
+
+    /**
+     * Brings the aggregates to the recomputed values by adding the difference, never by resetting,
+     * so a change that lands meanwhile is kept. Call it holding the locks of this client's accounts.
+     */
+    public void correctAggregates(TransactionTotals recomputed, TransactionTotals recomputedSharedTransfers, long balanceInCentimes) {
+        TransactionTotals difference = new TransactionTotals();
+        difference.add(recomputed);
+        difference.subtract(totals);
+        totals.add(difference);
+        difference = new TransactionTotals();
+        difference.add(recomputedSharedTransfers);
+        difference.subtract(sharedTransfers);
+        sharedTransfers.add(difference);
+        adjustBalance(balanceInCentimes - balance.sum());
+    }
+
+    // Summed over the accounts, so a transfer between two of them is in it twice; see getTransactionCount
+    public TransactionTotals getTotals() {
+        return totals;
+    }
+
+    public TransactionTotals getSharedTransfers() {
+        return sharedTransfers;
+    }
+
+    // Distinct transactions, as the client's history lists them: a transfer between two of its accounts counts once
+    public long getTransactionCount() {
+        return totals.getCount() - sharedTransfers.getCount();
+    }
+
+    public long getTotal(TransactionType type) {
+        return totals.getTotal(type) - sharedTransfers.getTotal(type);
+    }
+
+    public long getBalanceInCentimes() {
+        return balance.sum();
+    }
+
+    void adjustBalance(long deltaInCentimes) {
+        balance.add(deltaInCentimes);
+        balanceChanged();
+    }
+
+    public void setBalanceListener(BalanceListener balanceListener) {
+        this.balanceListener = balanceListener;
     }
 
-    public void removeAccount(Account account) {
-        this.accounts.remove(account);
+    private void balanceChanged() {
+        BalanceListener listener = balanceListener;
+        if (listener != null) {
+            listener.balanceChanged(this);
+        }
     }
 
     @Override
@@ -2,10 +2,10 @@ package models;
 
 import models.enums.DepartmentType;
 import models.enums.Role;
+import utils.Ids;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Manager extends Person {
     private String managerId;
@@ -14,9 +14,9 @@ public class Manager extends Person {
 
     public Manager(String firstName, String lastName, String email, String password, DepartmentType department) {
         super(firstName, lastName, email, password, Role.MANAGER);
-        this.managerId = UUID.randomUUID().toString();
+        this.managerId = Ids.next();
         this.department = department;
-        this.clientList = new ArrayList<>();
+        this.clientList = new CopyOnWriteArrayList<>();
     }
 
     public String getManagerId() {
@@ -40,7 +40,7 @@ public class Manager extends Person {
     }
 
     public void setClientList(List<Client> clientList) {
-        this.clientList = clientList;
+        this.clientList = new CopyOnWriteArrayList<>(clientList);
     }
 
     public void addClient(Client client) {
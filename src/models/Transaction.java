@@ -1,32 +1,41 @@
 package models;
 
 import models.enums.TransactionType;
-
-
-import java.time.LocalDateTime;
-import java.util.UUID;
+import utils.Clock;
+import utils.Ids;
+import utils.Money;
 
 public class Transaction {
     private String transactionId;
     private TransactionType transactionType;
-    private double amount;
-    private LocalDateTime date;
+    private long amount; // in centimes
+    private long timestamp; // epoch microseconds
     private String description;
     private Account sourceAccount;
     private Account destinationAccount;
 
-    public Transaction(TransactionType transactionType, double amount, String description, Account sourceAccount) {
+    public Transaction(TransactionType transactionType, long amount, String description, Account sourceAccount) {
         this(transactionType, amount, description, sourceAccount, null);
     }
 
-    public Transaction(TransactionType transactionType, double amount, String description, Account sourceAccount, Account destinationAccount) {
-        this.transactionId = UUID.randomUUID().toString();
+    public Transaction(TransactionType transactionType, long amount, String description, Account sourceAccount, Account destinationAccount) {
+        this.transactionId = Ids.next();
+        this.transactionType = transactionType;
+        this.amount = amount;
+        this.description = description;
+        this.sourceAccount = sourceAccount;
+        this.destinationAccount = destinationAccount;
+        this.timestamp = Clock.nowMicros();
+    }
+
+    public Transaction(String transactionId, TransactionType transactionType, long amount, long timestamp, String description, Account sourceAccount, Account destinationAccount) {
+        this.transactionId = transactionId;
         this.transactionType = transactionType;
         this.amount = amount;
+        this.timestamp = timestamp;
         this.description = description;
         this.sourceAccount = sourceAccount;
         this.destinationAccount = destinationAccount;
-        this.date = LocalDateTime.now();
     }
 
     // Getters and setters
@@ -47,19 +56,23 @@ public class Transaction {
     }
 
     public double getAmount() {
+        return Money.toAmount(amount);
+    }
+
+    public long getAmountInCentimes() {
         return amount;
     }
 
     public void setAmount(double amount) {
-        this.amount = amount;
+        this.amount = Money.fromAmount(amount);
     }
 
-    public LocalDateTime getDate() {
-        return date;
+    public long getTimestamp() {
+        return timestamp;
     }
 
-    public void setDate(LocalDateTime date) {
-        this.date = date;
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
     }
 
     public String getDescription() {
@@ -86,8 +99,24 @@ public class Transaction {
         this.destinationAccount = destinationAccount;
     }
 
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Transaction)) {
+            return false;
+        }
+        return transactionId.equals(((Transaction) other).transactionId);
+    }
+
+    @Override
+    public int hashCode() {
+        return transactionId.hashCode();
+    }
+
     @Override
     public String toString() {
-        return "Transaction ID: " + transactionId + " | Transaction Type: " + transactionType + " | Amount: " + amount + " MAD| Date: " + date + " | Description: " + description + " | Source Account ID: " + sourceAccount.getAccountId() + (destinationAccount != null ? " | Destination Account ID: " + destinationAccount.getAccountId() : "");
+        return "Transaction ID: " + transactionId + " | Transaction Type: " + transactionType + " | Amount: " + Money.format(amount) + " MAD| Date: " + Clock.toLocalDateTime(timestamp) + " | Description: " + description + " | Source Account ID: " + sourceAccount.getAccountId() + (destinationAccount != null ? " | Destination Account ID: " + destinationAccount.getAccountId() : "");
     }
 }
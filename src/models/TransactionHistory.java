@@ -0,0 +1,52 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only, date-ordered view of the transactions posted to one account (either leg of a transfer).
+ * The ledger owns the postings; an account only holds the view it was given.
+ * A deleted transaction keeps its position, reading as null, until the ledger compacts; the history
+ * then shrinks, so positions are only meaningful right away.
+ */
+public interface TransactionHistory {
+    TransactionHistory EMPTY = new TransactionHistory() {
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public Transaction get(int index) {
+            return null;
+        }
+
+        @Override
+        public int lowerBound(long timestamp) {
+            return 0;
+        }
+
+        @Override
+        public List<Transaction> subList(int fromIndex, int toIndex) {
+            return new ArrayList<>();
+        }
+    };
+
+    // Number of positions, including deleted ones not yet compacted away
+    int size();
+
+    /**
+     * The transaction at {@code index}, oldest first, or null if it was deleted or the history is no longer that long.
+     */
+    Transaction get(int index);
+
+    /**
+     * Index of the first transaction stamped at or after {@code timestamp} (epoch microseconds; the size if none).
+     */
+    int lowerBound(long timestamp);
+
+    /**
+     * Live transactions at [fromIndex, toIndex), clamped to the current size.
+     */
+    List<Transaction> subList(int fromIndex, int toIndex);
+}
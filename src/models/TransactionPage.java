@@ -0,0 +1,29 @@
+package models;
+
+import java.util.List;
+
+/**
+ * One page of a newest-first transaction listing. {@code nextCursor} is an opaque token for the
+ * following (older) page, or null when this is the last page.
+ */
+public class TransactionPage {
+    private final List<Transaction> transactions;
+    private final String nextCursor;
+
+    public TransactionPage(List<Transaction> transactions, String nextCursor) {
+        this.transactions = transactions;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,70 @@
+package models;
+
+import models.enums.TransactionType;
+
+/**
+ * One deposit, withdrawal or transfer to submit as part of a batch.
+ */
+public class TransactionRequest {
+    private final TransactionType transactionType;
+    private final String sourceAccountId;
+    private final String destinationAccountId; // transfers only
+    private final double amount;
+    private final String description;
+    private final String idempotencyKey; // optional; a retry with the same key is not applied twice
+
+    public TransactionRequest(TransactionType transactionType, String sourceAccountId, String destinationAccountId,
+                              double amount, String description) {
+        this(transactionType, sourceAccountId, destinationAccountId, amount, description, null);
+    }
+
+    public TransactionRequest(TransactionType transactionType, String sourceAccountId, String destinationAccountId,
+                              double amount, String description, String idempotencyKey) {
+        this.transactionType = transactionType;
+        this.sourceAccountId = sourceAccountId;
+        this.destinationAccountId = destinationAccountId;
+        this.amount = amount;
+        this.description = description;
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public static TransactionRequest deposit(String accountId, double amount, String description) {
+        return new TransactionRequest(TransactionType.DEPOSIT, accountId, null, amount, description);
+    }
+
+    public static TransactionRequest withdrawal(String accountId, double amount, String description) {
+        return new TransactionRequest(TransactionType.WITHDRAWAL, accountId, null, amount, description);
+    }
+
+    public static TransactionRequest transfer(String sourceAccountId, String destinationAccountId, double amount, String description) {
+        return new TransactionRequest(TransactionType.TRANSFER, sourceAccountId, destinationAccountId, amount, description);
+    }
+
+    public TransactionRequest withIdempotencyKey(String idempotencyKey) {
+        return new TransactionRequest(transactionType, sourceAccountId, destinationAccountId, amount, description, idempotencyKey);
+    }
+
+    public TransactionType getTransactionType() {
+        return transactionType;
+    }
+
+    public String getSourceAccountId() {
+        return sourceAccountId;
+    }
+
+    public String getDestinationAccountId() {
+        return destinationAccountId;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+}
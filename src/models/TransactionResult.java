@@ -0,0 +1,39 @@
+package models;
+
+/**
+ * Outcome of one batch item: the posted transaction, or why it was not applied.
+ */
+public class TransactionResult {
+    private final Transaction transaction;
+    private final String error;
+
+    private TransactionResult(Transaction transaction, String error) {
+        this.transaction = transaction;
+        this.error = error;
+    }
+
+    public static TransactionResult posted(Transaction transaction) {
+        return new TransactionResult(transaction, null);
+    }
+
+    public static TransactionResult failed(String error) {
+        return new TransactionResult(null, error);
+    }
+
+    public boolean isPosted() {
+        return transaction != null;
+    }
+
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return isPosted() ? "Posted " + transaction.getTransactionId() : "Failed: " + error;
+    }
+}
@@ -0,0 +1,71 @@
+package models;
+
+import models.enums.TransactionType;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals (in centimes) and count of the transactions posted to an account or client,
+ * maintained at write time by TransactionService.
+ */
+public class TransactionTotals {
+    private final LongAdder[] totalsByType;
+    private final LongAdder count;
+
+    public TransactionTotals() {
+        this.totalsByType = new LongAdder[TransactionType.values().length];
+        for (int i = 0; i < totalsByType.length; i++) {
+            totalsByType[i] = new LongAdder();
+        }
+        this.count = new LongAdder();
+    }
+
+    public void record(TransactionType type, long amountInCentimes) {
+        totalsByType[type.ordinal()].add(amountInCentimes);
+        count.increment();
+    }
+
+    // Takes back a recorded transaction, e.g. when it is deleted from the ledger.
+    public void unrecord(TransactionType type, long amountInCentimes) {
+        totalsByType[type.ordinal()].add(-amountInCentimes);
+        count.decrement();
+    }
+
+    public void add(TransactionTotals other) {
+        for (int i = 0; i < totalsByType.length; i++) {
+            totalsByType[i].add(other.totalsByType[i].sum());
+        }
+        count.add(other.count.sum());
+    }
+
+    public void subtract(TransactionTotals other) {
+        for (int i = 0; i < totalsByType.length; i++) {
+            totalsByType[i].add(-other.totalsByType[i].sum());
+        }
+        count.add(-other.count.sum());
+    }
+
+    public void reset() {
+        for (LongAdder total : totalsByType) {
+            total.reset();
+        }
+        count.reset();
+    }
+
+    public long getTotal(TransactionType type) {
+        return totalsByType[type.ordinal()].sum();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public boolean sameAs(TransactionTotals other) {
+        for (int i = 0; i < totalsByType.length; i++) {
+            if (totalsByType[i].sum() != other.totalsByType[i].sum()) {
+                return false;
+            }
+        }
+        return count.sum() == other.count.sum();
+    }
+}
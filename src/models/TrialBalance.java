@@ -0,0 +1,65 @@
+package models;
+
+import models.enums.LedgerAccount;
+import utils.Money;
+
+import java.util.List;
+
+/**
+ * Outcome of re-adding the whole posting ledger: every entry and the ledger as a whole must sum to
+ * zero, and each customer account's postings must add up to its balance.
+ */
+public class TrialBalance {
+    private final int postingCount;
+    private final int entryCount;
+    private final long total; // centimes
+    private final int unbalancedEntries;
+    private final long[] ledgerAccountBalances; // by LedgerAccount ordinal, in centimes
+    private final List<String> mismatchedAccountIds;
+
+    public TrialBalance(int postingCount, int entryCount, long total, int unbalancedEntries,
+                        long[] ledgerAccountBalances, List<String> mismatchedAccountIds) {
+        this.postingCount = postingCount;
+        this.entryCount = entryCount;
+        this.total = total;
+        this.unbalancedEntries = unbalancedEntries;
+        this.ledgerAccountBalances = ledgerAccountBalances;
+        this.mismatchedAccountIds = mismatchedAccountIds;
+    }
+
+    public boolean isBalanced() {
+        return total == 0 && unbalancedEntries == 0 && mismatchedAccountIds.isEmpty();
+    }
+
+    public int getPostingCount() {
+        return postingCount;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public long getTotalInCentimes() {
+        return total;
+    }
+
+    public int getUnbalancedEntries() {
+        return unbalancedEntries;
+    }
+
+    public long getBalanceInCentimes(LedgerAccount account) {
+        return ledgerAccountBalances[account.ordinal()];
+    }
+
+    // Customer accounts whose balance differs from the sum of their postings
+    public List<String> getMismatchedAccountIds() {
+        return mismatchedAccountIds;
+    }
+
+    @Override
+    public String toString() {
+        return "Trial balance: " + (isBalanced() ? "BALANCED" : "OUT OF BALANCE") + " | Postings: " + postingCount
+                + " | Entries: " + entryCount + " | Total: " + Money.format(total) + " | Unbalanced entries: " + unbalancedEntries
+                + " | Mismatched accounts: " + mismatchedAccountIds.size();
+    }
+}
@@ -0,0 +1,6 @@
+package models.enums;
+
+public enum BatchMode {
+    PER_ITEM,       // each item succeeds or fails on its own; failed items are skipped
+    ALL_OR_NOTHING; // if any item fails, nothing in the batch is applied
+}
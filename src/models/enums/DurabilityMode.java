@@ -0,0 +1,7 @@
+package models.enums;
+
+public enum DurabilityMode {
+    SYNC,           // fsync every record before the writer returns
+    GROUP_COMMIT,   // writers wait for a shared fsync issued once per commit window
+    ASYNC;          // writers never wait; the journal is fsynced once per commit window
+}
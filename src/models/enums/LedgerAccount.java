@@ -0,0 +1,12 @@
+package models.enums;
+
+/**
+ * The bank's own accounts in the posting ledger, which take the other leg of every entry that
+ * doesn't move money between two customer accounts.
+ */
+public enum LedgerAccount {
+    CASH,             // deposits and withdrawals
+    ADJUSTMENTS,      // balances set by a manager
+    OPENING_BALANCES, // balances accounts were opened with, or brought forward from a snapshot
+    IN_TRANSIT        // transfers between shards, debited from the source but not yet credited
+}
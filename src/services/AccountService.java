@@ -3,31 +3,79 @@ package services;
 import models.Account;
 import models.Client;
 import models.enums.AccountType;
+import utils.Money;
+
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class AccountService {
-    private final List<Account> accounts;
+    // Accounts are indexed by ID, with secondary indexes by client ID and account type.
+    private final Map<String, Account> accountsById;
+    private final Map<String, Set<Account>> accountsByClientId;
+    private final Map<AccountType, Set<Account>> accountsByType;
     private final ClientService clientService;
+    private final Journal journal;
+    private volatile PostingLedger ledger; // attached by TransactionService
 
     public AccountService(ClientService clientService) {
-        this.accounts = new ArrayList<>();
+        this(clientService, Journal.disabled());
+    }
+
+    public AccountService(ClientService clientService, Journal journal) {
+        this.accountsById = new ConcurrentHashMap<>();
+        this.accountsByClientId = new ConcurrentHashMap<>();
+        this.accountsByType = new ConcurrentHashMap<>();
         this.clientService = clientService;
+        this.journal = journal;
     }
 
     public Account createAccount(AccountType accountType, String clientId, double amount) {
         Client client = clientService.findClientById(clientId);
         Account account = new Account(accountType, client, amount);
-        accounts.add(account);
-        client.addAccount(account);
+        Journal.Record record = journal.accountCreated(account, account.getBalanceInCentimes());
+        long sequence;
+        journal.beginChange();
+        try {
+            // Journaled before the account is reachable, so its creation precedes any of its transactions
+            sequence = journal.append(record);
+            postOpeningBalance(account);
+            indexAccount(account);
+            client.addAccount(account);
+        } finally {
+            journal.endChange();
+        }
+        journal.awaitDurable(sequence);
         return account;
     }
 
     public Account updateAccountType(String accountId, AccountType newAccountType) {
         Account account = findAccountById(accountId);
-        account.setAccountType(newAccountType);
+        Journal.Record record = journal.accountTypeChanged(accountId, newAccountType);
+        long sequence;
+        journal.beginChange();
+        account.getLock().lock();
+        try {
+            AccountType oldAccountType = account.getAccountType();
+            account.setAccountType(newAccountType);
+            if (oldAccountType != newAccountType) {
+                removeFromIndex(accountsByType, oldAccountType, account);
+                addToIndex(accountsByType, newAccountType, account);
+            }
+            sequence = journal.append(record);
+        } finally {
+            account.getLock().unlock();
+            journal.endChange();
+        }
+        journal.awaitDurable(sequence);
         return account;
     }
 
@@ -36,29 +84,72 @@ public class AccountService {
             throw new IllegalArgumentException("The account ID is required");
         }
         Account account = findAccountById(accountId);
-        if (account.getBalance() != 0) {
-            throw new IllegalStateException("Cannot delete account with balance");
+        Journal.Record record = journal.accountDeleted(accountId);
+        long sequence;
+        journal.beginChange();
+        account.getLock().lock();
+        try {
+            if (account.getBalanceInCentimes() != 0) {
+                throw new IllegalStateException("Cannot delete account with balance");
+            }
+            // A refund may still have to come back to it
+            if (account.hasDebitInFlight()) {
+                throw new IllegalStateException("Cannot delete account with a transfer in flight");
+            }
+            account.getClient().removeAccount(account);
+            unindexAccount(account);
+            sequence = journal.append(record);
+        } finally {
+            account.getLock().unlock();
+            journal.endChange();
         }
-        account.getClient().removeAccount(account);
-        accounts.remove(account);
+        journal.awaitDurable(sequence);
+    }
+
+    /**
+     * Re-registers an account read back from a snapshot or the journal and links it to its client;
+     * not journaled again. Its balance is posted as an opening balance, so restore it after the
+     * ledger's account ordinals.
+     */
+    public void restoreAccount(Account account) {
+        postOpeningBalance(account);
+        indexAccount(account);
+        account.getClient().addAccount(account);
     }
 
     public Account findAccountById(String accountId) {
-        return accounts.stream()
-                .filter(account -> account.getAccountId().equals(accountId))
-                .findFirst()
-                .orElseThrow(() -> new NoSuchElementException("NO account found with ID: " + accountId));
+        Account account = accountId == null ? null : accountsById.get(accountId);
+        if (account == null) {
+            throw new NoSuchElementException("NO account found with ID: " + accountId);
+        }
+        return account;
+    }
 
+    /**
+     * Looks up many accounts at once; IDs with no account are left out of the result.
+     */
+    public Map<String, Account> findAccountsById(Collection<String> accountIds) {
+        Map<String, Account> found = new HashMap<>(accountIds.size() * 2);
+        for (String accountId : accountIds) {
+            Account account = accountId == null ? null : accountsById.get(accountId);
+            if (account != null) {
+                found.put(accountId, account);
+            }
+        }
+        return found;
     }
 
     public List<Account> getAccountsByClientID(String clientId) {
-        return accounts.stream()
-            .filter(account -> account.getClient().getClientId().equals(clientId))
-            .collect(Collectors.toList());
+        return new ArrayList<>(accountsByClientId.getOrDefault(clientId, Collections.emptySet()));
     }
 
     public List<Account> getAllAccounts() {
-        return new ArrayList<>(accounts);
+        return new ArrayList<>(accountsById.values());
+    }
+
+    // Lazy and weakly consistent: accounts added or removed meanwhile may or may not be seen
+    public Stream<Account> streamAccounts() {
+        return accountsById.values().stream();
     }
 
     public double getAccountBalance(String accountId) {
@@ -68,30 +159,96 @@ public class AccountService {
 
     public void updateAccountBalance(String accountId,double newBalance) {
         Account account = findAccountById(accountId);
-        account.setBalance(newBalance);
+        Journal.Record record = journal.accountBalanceSet(accountId, Money.fromAmount(newBalance));
+        long sequence;
+        journal.beginChange();
+        account.getLock().lock();
+        try {
+            long previous = account.getBalanceInCentimes();
+            account.setBalance(newBalance);
+            if (ledger != null) {
+                ledger.adjustment(account, account.getBalanceInCentimes() - previous);
+            }
+            sequence = journal.append(record);
+        } finally {
+            account.getLock().unlock();
+            journal.endChange();
+        }
+        journal.awaitDurable(sequence);
     }
 
     public List<Account> getAccountsByType(AccountType accountType) {
-        return accounts.stream()
-                .filter(account -> account.getAccountType().equals(accountType))
-                .collect(Collectors.toList());
+        return new ArrayList<>(accountsByType.getOrDefault(accountType, Collections.emptySet()));
     }
 
     public List<Account> getAccountsWithBalanceAbove(double balance) {
-        return accounts
+        long threshold = Money.fromAmount(balance);
+        return accountsById.values()
                 .stream()
-                .filter(account -> account.getBalance() > balance)
+                .filter(account -> account.getBalanceInCentimes() > threshold)
                 .collect(Collectors.toList());
     }
 
     public List<Account> getAccountsWithBalanceBelow(double balance) {
-        return accounts
+        long threshold = Money.fromAmount(balance);
+        return accountsById.values()
                 .stream()
-                .filter(account -> account.getBalance() < balance)
+                .filter(account -> account.getBalanceInCentimes() < threshold)
                 .collect(Collectors.toList());
     }
 
     public boolean canWithdraw(Account account, double amount) {
-        return account.getBalance() > amount;
+        return canWithdraw(account, Money.fromAmount(amount));
+    }
+
+    public boolean canWithdraw(Account account, long amountInCentimes) {
+        return canWithdraw(account.getBalanceInCentimes(), amountInCentimes);
+    }
+
+    public boolean canWithdraw(long balanceInCentimes, long amountInCentimes) {
+        return balanceInCentimes > amountInCentimes;
+    }
+
+    // Called once, by the TransactionService whose ledger records this service's balance changes
+    void attachLedger(PostingLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    private void postOpeningBalance(Account account) {
+        if (ledger != null) {
+            account.getLock().lock();
+            try {
+                ledger.openingBalance(account);
+            } finally {
+                account.getLock().unlock();
+            }
+        }
+    }
+
+    private void indexAccount(Account account) {
+        accountsById.put(account.getAccountId(), account);
+        addToIndex(accountsByClientId, account.getClient().getClientId(), account);
+        addToIndex(accountsByType, account.getAccountType(), account);
+    }
+
+    private void unindexAccount(Account account) {
+        accountsById.remove(account.getAccountId());
+        removeFromIndex(accountsByClientId, account.getClient().getClientId(), account);
+        removeFromIndex(accountsByType, account.getAccountType(), account);
+    }
+
+    private static <K> void addToIndex(Map<K, Set<Account>> index, K key, Account account) {
+        index.compute(key, (k, accounts) -> {
+            Set<Account> bucket = accounts != null ? accounts : ConcurrentHashMap.<Account>newKeySet();
+            bucket.add(account);
+            return bucket;
+        });
+    }
+
+    private static <K> void removeFromIndex(Map<K, Set<Account>> index, K key, Account account) {
+        index.computeIfPresent(key, (k, accounts) -> {
+            accounts.remove(account);
+            return accounts.isEmpty() ? null : accounts;
+        });
     }
 }
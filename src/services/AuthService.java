@@ -20,15 +20,11 @@ public class AuthService {
     }
 
     public Manager registerManager(String firstName, String lastName, String email, String password, DepartmentType department) {
-        Optional<Manager> existingManager = managerService.getAllManagers().stream()
-                .filter(manager -> manager.getEmail().equals(email))
-                .findFirst();
-        if (existingManager.isPresent()) {
+        if (managerService.findManagerByEmail(email).isPresent()) {
             throw new IllegalArgumentException("Manager with this email already exists");
         }
-        Manager manager = new Manager(firstName, lastName, email, password, department);
-        managerService.addManager(manager);
-        return manager;
+        // Through ManagerService so the new manager is journaled
+        return managerService.createManager(firstName, lastName, email, password, department);
     }
 
 
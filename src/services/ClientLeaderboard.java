@@ -0,0 +1,231 @@
+package services;
+
+import models.BalanceListener;
+import models.Client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Clients ranked by total balance, richest first (ties by client ID). The ranking is a treap whose
+ * nodes count their subtree, so a rank lookup is O(log n) and the top K are O(K + log n).
+ * <p>
+ * Tracked clients report every balance change through {@link BalanceListener}. A change only queues
+ * the client, once until the next lookup, so deposits and transfers don't pay for a walk down the
+ * tree; each lookup first re-reads the balances of the queued clients and moves them, so it sees
+ * every change made before it started, and any number of changes to a client in between cost one move.
+ */
+public class ClientLeaderboard implements BalanceListener {
+    // Changed under the lock only, read without it by balanceChanged
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+    private final Queue<Node> changed = new ConcurrentLinkedQueue<>();
+    private Node root;
+
+    public void track(Client client) {
+        synchronized (this) {
+            if (!nodes.containsKey(client.getClientId())) {
+                Node node = new Node(client, client.getBalanceInCentimes());
+                nodes.put(client.getClientId(), node);
+                root = insert(root, node);
+            }
+        }
+        client.setBalanceListener(this);
+        // A change made after the balance was read but before the listener was set would be missed;
+        // queueing the client once makes the next lookup read its balance again
+        balanceChanged(client);
+    }
+
+    public void untrack(Client client) {
+        client.setBalanceListener(null);
+        synchronized (this) {
+            Node node = nodes.remove(client.getClientId());
+            if (node != null) {
+                root = remove(root, node);
+            }
+        }
+    }
+
+    @Override
+    public void balanceChanged(Client client) {
+        Node node = nodes.get(client.getClientId());
+        if (node != null && node.queued.compareAndSet(false, true)) {
+            changed.offer(node);
+        }
+    }
+
+    public synchronized List<Client> top(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("The limit can't be negative");
+        }
+        applyChanges();
+        List<Client> top = new ArrayList<>(Math.min(limit, nodes.size()));
+        Deque<Node> path = new ArrayDeque<>();
+        Node node = root;
+        while (top.size() < limit && (node != null || !path.isEmpty())) {
+            while (node != null) {
+                path.push(node);
+                node = node.left;
+            }
+            node = path.pop();
+            top.add(node.client);
+            node = node.right;
+        }
+        return top;
+    }
+
+    /**
+     * The client's 1-based place, richest first.
+     */
+    public synchronized int rankOf(String clientId) {
+        Node target = nodes.get(clientId);
+        if (target == null) {
+            throw new NoSuchElementException("Client not found with ID: " + clientId);
+        }
+        applyChanges();
+        int rank = 1;
+        Node node = root;
+        while (node != target) {
+            if (compare(target, node) < 0) {
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank + size(target.left);
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    private void applyChanges() {
+        for (Node node = changed.poll(); node != null; node = changed.poll()) {
+            // Cleared before the read, so a change made after it queues the client again
+            node.queued.set(false);
+            long balance = node.client.getBalanceInCentimes();
+            if (nodes.get(node.clientId) == node && balance != node.balance) {
+                root = remove(root, node);
+                node.reset(balance);
+                root = insert(root, node);
+            }
+        }
+    }
+
+    private static Node insert(Node tree, Node node) {
+        if (tree == null) {
+            return node;
+        }
+        if (node.priority > tree.priority) {
+            Node[] parts = split(tree, node);
+            node.left = parts[0];
+            node.right = parts[1];
+            node.update();
+            return node;
+        }
+        if (compare(node, tree) < 0) {
+            tree.left = insert(tree.left, node);
+        } else {
+            tree.right = insert(tree.right, node);
+        }
+        tree.update();
+        return tree;
+    }
+
+    private static Node remove(Node tree, Node node) {
+        if (tree == node) {
+            return merge(tree.left, tree.right);
+        }
+        if (compare(node, tree) < 0) {
+            tree.left = remove(tree.left, node);
+        } else {
+            tree.right = remove(tree.right, node);
+        }
+        tree.update();
+        return tree;
+    }
+
+    // Splits the tree into the nodes ranked before the key and those after it
+    private static Node[] split(Node tree, Node key) {
+        if (tree == null) {
+            return new Node[2];
+        }
+        Node[] parts;
+        if (compare(tree, key) < 0) {
+            parts = split(tree.right, key);
+            tree.right = parts[0];
+            parts[0] = tree;
+        } else {
+            parts = split(tree.left, key);
+            tree.left = parts[1];
+            parts[1] = tree;
+        }
+        tree.update();
+        return parts;
+    }
+
+    // Every node of before ranks ahead of every node of after
+    private static Node merge(Node before, Node after) {
+        if (before == null) {
+            return after;
+        }
+        if (after == null) {
+            return before;
+        }
+        if (before.priority > after.priority) {
+            before.right = merge(before.right, after);
+            before.update();
+            return before;
+        }
+        after.left = merge(before, after.left);
+        after.update();
+        return after;
+    }
+
+    // Richest first, then by client ID
+    private static int compare(Node left, Node right) {
+        int byBalance = Long.compare(right.balance, left.balance);
+        return byBalance != 0 ? byBalance : left.clientId.compareTo(right.clientId);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node {
+        final Client client;
+        final String clientId;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        final AtomicBoolean queued = new AtomicBoolean();
+        long balance;
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(Client client, long balance) {
+            this.client = client;
+            this.clientId = client.getClientId();
+            this.balance = balance;
+        }
+
+        void reset(long balance) {
+            this.balance = balance;
+            this.size = 1;
+            this.left = null;
+            this.right = null;
+        }
+
+        void update() {
+            size = 1 + size(left) + size(right);
+        }
+    }
+}
@@ -4,22 +4,45 @@ import models.Client;
 import models.Account;
 import models.Manager;
 import models.Transaction;
+import models.TransactionPage;
 import models.enums.TransactionType;
-import java.time.LocalDateTime;
+import utils.Money;
+import utils.NewestFirstTransactionIterator;
+import utils.TransactionPager;
+
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class ClientService {
-    private final List<Client> clients;
+    // Clients are indexed by ID and by normalized (trimmed, lower-case) email.
+    private final Map<String, Client> clientsById;
+    private final Map<String, Client> clientsByEmail;
+    private final ClientLeaderboard leaderboard = new ClientLeaderboard();
+    private final Journal journal;
 
     public ClientService() {
-        this.clients = new ArrayList<>();
+        this(Journal.disabled());
+    }
+
+    public ClientService(Journal journal) {
+        this.clientsById = new ConcurrentHashMap<>();
+        this.clientsByEmail = new ConcurrentHashMap<>();
+        this.journal = journal;
     }
 
     public Client createClient(Manager manager, String firstName, String lastName, String email, String password) {
@@ -30,37 +53,63 @@ public class ClientService {
             throw new IllegalArgumentException("All client information must be provided");
         }
 
-        if (findClientByEmail(email).isPresent()) {
-            throw new IllegalArgumentException("Client with this email already exists");
-        }
-
         Client client = new Client(firstName, lastName, email, password);
-        clients.add(client);
+        Journal.Record record = journal.clientCreated(client, manager);
+        long sequence;
+        journal.beginChange();
+        try {
+            if (clientsByEmail.putIfAbsent(normalizeEmail(email), client) != null) {
+                throw new IllegalArgumentException("Client with this email already exists");
+            }
+            sequence = journal.append(record);
+            clientsById.put(client.getClientId(), client);
+            leaderboard.track(client);
 
-        if (manager != null) {
-            manager.addClient(client);
+            if (manager != null) {
+                manager.addClient(client);
+            }
+        } finally {
+            journal.endChange();
         }
 
+        journal.awaitDurable(sequence);
         return client;
     }
 
     public Client updateClient(String clientId, String firstName, String lastName, String email) {
         Client client = findClientById(clientId);
 
-        if (firstName != null && !firstName.trim().isEmpty()) {
-            client.setFirstName(firstName);
-        }
-        if (lastName != null && !lastName.trim().isEmpty()) {
-            client.setLastName(lastName);
-        }
-        if (email != null && !email.trim().isEmpty()) {
-            Optional<Client> existingClient = findClientByEmail(email);
-            if (existingClient.isPresent() && !existingClient.get().getClientId().equals(clientId)) {
-                throw new IllegalArgumentException("Email already exists for another client");
+        long sequence;
+        journal.beginChange();
+        try {
+            Journal.Record record = journal.clientUpdated(clientId,
+                    firstName != null && !firstName.trim().isEmpty() ? firstName : client.getFirstName(),
+                    lastName != null && !lastName.trim().isEmpty() ? lastName : client.getLastName(),
+                    email != null && !email.trim().isEmpty() ? email : client.getEmail());
+            if (firstName != null && !firstName.trim().isEmpty()) {
+                client.setFirstName(firstName);
             }
-            client.setEmail(email);
+            if (lastName != null && !lastName.trim().isEmpty()) {
+                client.setLastName(lastName);
+            }
+            if (email != null && !email.trim().isEmpty()) {
+                String newKey = normalizeEmail(email);
+                String oldKey = normalizeEmail(client.getEmail());
+                Client existingClient = clientsByEmail.putIfAbsent(newKey, client);
+                if (existingClient != null && existingClient != client) {
+                    throw new IllegalArgumentException("Email already exists for another client");
+                }
+                if (!newKey.equals(oldKey)) {
+                    clientsByEmail.remove(oldKey, client);
+                }
+                client.setEmail(email);
+            }
+            sequence = journal.append(record);
+        } finally {
+            journal.endChange();
         }
 
+        journal.awaitDurable(sequence);
         return client;
     }
 
@@ -68,142 +117,202 @@ public class ClientService {
         Client client = findClientById(clientId);
 
         boolean hasBalance = client.getAccounts().stream()
-            .anyMatch(account -> account.getBalance() != 0);
+            .anyMatch(account -> account.getBalanceInCentimes() != 0);
 
         if (hasBalance) {
             throw new IllegalStateException("Cannot delete client with accounts having non-zero balance");
         }
 
-        if (manager != null) {
-            manager.removeClient(client);
-        }
+        Journal.Record record = journal.clientDeleted(client, manager);
+        long sequence;
+        journal.beginChange();
+        try {
+            if (manager != null) {
+                manager.removeClient(client);
+            }
 
-        clients.remove(client);
+            removeClient(client);
+            sequence = journal.append(record);
+        } finally {
+            journal.endChange();
+        }
+        journal.awaitDurable(sequence);
     }
 
     public Client findClientById(String clientId) {
-        return clients.stream()
-                .filter(client -> client.getClientId().equals(clientId))
-                .findFirst()
-                .orElseThrow(() -> new NoSuchElementException("Client not found with ID: " + clientId));
+        Client client = clientId == null ? null : clientsById.get(clientId);
+        if (client == null) {
+            throw new NoSuchElementException("Client not found with ID: " + clientId);
+        }
+        return client;
     }
 
     public Optional<Client> findClientByEmail(String email) {
-        return clients.stream()
-                .filter(client -> client.getEmail().equals(email))
-                .findFirst();
+        if (email == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(clientsByEmail.get(normalizeEmail(email)));
     }
 
     public List<Client> getAllClients() {
-        return new ArrayList<>(clients);
+        return new ArrayList<>(clientsById.values());
+    }
+
+    // Lazy and weakly consistent: clients added or removed meanwhile may or may not be seen
+    public Stream<Client> streamClients() {
+        return clientsById.values().stream();
     }
 
     public List<Transaction> getClientTransactionHistory(String clientId) {
+        return streamClientTransactions(clientId).collect(Collectors.toList());
+    }
+
+    /**
+     * Newest-first iterator over all of the client's accounts, merged lazily without sorting.
+     */
+    public Iterator<Transaction> iterateClientTransactions(String clientId) {
         Client client = findClientById(clientId);
-        return client.getAccounts()
-                .stream()
-                .flatMap(account -> account.getTransactions().stream())
-                .sorted(Comparator.comparing(Transaction::getDate).reversed())
+        return new NewestFirstTransactionIterator(client.getAccounts());
+    }
+
+    public Stream<Transaction> streamClientTransactions(String clientId) {
+        Spliterator<Transaction> spliterator = Spliterators.spliteratorUnknownSize(
+                iterateClientTransactions(clientId), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    public TransactionPage getClientTransactionPage(String clientId, String cursor, int pageSize) {
+        return TransactionPager.page(findClientById(clientId).getAccounts(), cursor, pageSize);
+    }
+
+    public List<Transaction> getRecentTransactions(String clientId, int limit) {
+        return streamClientTransactions(clientId)
+                .limit(limit)
                 .collect(Collectors.toList());
     }
 
     public List<Transaction> filterTransactionsByType(String clientId, TransactionType type) {
-        return getClientTransactionHistory(clientId)
-                .stream()
+        return streamClientTransactions(clientId)
                 .filter(transaction -> transaction.getTransactionType() == type)
                 .collect(Collectors.toList());
     }
 
     public List<Transaction> filterTransactionsByAmount(String clientId, double minAmount, double maxAmount) {
-        return getClientTransactionHistory(clientId)
-                .stream()
-                .filter(transaction -> transaction.getAmount() >= minAmount && transaction.getAmount() <= maxAmount)
+        long min = Money.fromAmount(minAmount);
+        long max = Money.fromAmount(maxAmount);
+        return streamClientTransactions(clientId)
+                .filter(transaction -> transaction.getAmountInCentimes() >= min && transaction.getAmountInCentimes() <= max)
                 .collect(Collectors.toList());
     }
 
-    public List<Transaction> filterTransactionsByDate(String clientId, LocalDateTime startDate, LocalDateTime endDate) {
-        return getClientTransactionHistory(clientId)
-                .stream()
-                .filter(transaction -> {
-                    LocalDateTime transactionDate = transaction.getDate();
-                    return transactionDate.isAfter(startDate) && transactionDate.isBefore(endDate);
-                })
-                .collect(Collectors.toList());
+    /**
+     * The client's transactions stamped in [startMicros, endMicros) (epoch microseconds), newest first.
+     */
+    public List<Transaction> filterTransactionsByDate(String clientId, long startMicros, long endMicros) {
+        Iterator<Transaction> iterator = new NewestFirstTransactionIterator(findClientById(clientId).getAccounts(), startMicros, endMicros);
+        List<Transaction> transactions = new ArrayList<>();
+        iterator.forEachRemaining(transactions::add);
+        return transactions;
     }
 
     public List<Transaction> filterTransactions(String clientId, Predicate<Transaction> filter) {
-        return getClientTransactionHistory(clientId)
-                .stream()
+        return streamClientTransactions(clientId)
                 .filter(filter)
                 .collect(Collectors.toList());
     }
 
     public List<Transaction> sortTransactionsByAmount(String clientId, boolean ascending) {
-        Comparator<Transaction> comparator = Comparator.comparing(Transaction::getAmount);
+        Comparator<Transaction> comparator = Comparator.comparingLong(Transaction::getAmountInCentimes);
         if (!ascending) {
             comparator = comparator.reversed();
         }
 
-        return getClientTransactionHistory(clientId).stream()
+        return streamClientTransactions(clientId)
                 .sorted(comparator)
                 .collect(Collectors.toList());
     }
 
     public List<Transaction> sortTransactionsByDate(String clientId, boolean ascending) {
-        Comparator<Transaction> comparator = Comparator.comparing(Transaction::getDate);
-        if (!ascending) {
-            comparator = comparator.reversed();
+        // The merged history is already newest-first; ascending order is just its reverse
+        List<Transaction> transactions = getClientTransactionHistory(clientId);
+        if (ascending) {
+            Collections.reverse(transactions);
         }
-
-        return getClientTransactionHistory(clientId)
-                .stream()
-                .sorted(comparator)
-                .collect(Collectors.toList());
+        return transactions;
     }
 
     public double calculateTotalBalance(String clientId) {
-        Client client = findClientById(clientId);
-        return client.getAccounts()
-                .stream()
-                .mapToDouble(Account::getBalance)
-                .sum();
+        return Money.toAmount(calculateTotalBalanceInCentimes(clientId));
+    }
+
+    public long calculateTotalBalanceInCentimes(String clientId) {
+        return findClientById(clientId).getBalanceInCentimes();
+    }
+
+    // Read from the live leaderboard: O(limit + log n), no sort
+    public List<Client> getTopClientsByBalance(int limit) {
+        return leaderboard.top(limit);
+    }
+
+    /**
+     * The client's 1-based place among all clients by total balance, richest first.
+     */
+    public int getBalanceRank(String clientId) {
+        return leaderboard.rankOf(findClientById(clientId).getClientId());
     }
 
     public double calculateTotalDeposits(String clientId) {
-        return getClientTransactionHistory(clientId)
-                .stream()
-                .filter(transaction -> transaction.getTransactionType() == TransactionType.DEPOSIT)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        return Money.toAmount(calculateTotalByType(clientId, TransactionType.DEPOSIT));
     }
 
     public double calculateTotalWithdrawals(String clientId) {
-        return getClientTransactionHistory(clientId)
-                .stream()
-                .filter(transaction -> transaction.getTransactionType() == TransactionType.WITHDRAWAL)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        return Money.toAmount(calculateTotalByType(clientId, TransactionType.WITHDRAWAL));
     }
 
     public double calculateTotalTransfers(String clientId) {
-        return getClientTransactionHistory(clientId)
-                .stream()
-                .filter(transaction -> transaction.getTransactionType() == TransactionType.TRANSFER)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        return Money.toAmount(calculateTotalByType(clientId, TransactionType.TRANSFER));
+    }
+
+    public long getTransactionCount(String clientId) {
+        return findClientById(clientId).getTransactionCount();
+    }
+
+    private long calculateTotalByType(String clientId, TransactionType type) {
+        return findClientById(clientId).getTotal(type);
     }
 
     public boolean validateClientCredentials(String email, String password) {
-        return clients.stream()
-                .anyMatch(client -> client.getEmail().equals(email) && client.getPassword().equals(password));
+        return findClientByEmail(email)
+                .map(client -> client.getPassword().equals(password))
+                .orElse(false);
     }
 
     public void addClient(Client client) {
-        clients.add(client);
+        if (clientsByEmail.putIfAbsent(normalizeEmail(client.getEmail()), client) != null) {
+            throw new IllegalArgumentException("Client with this email already exists");
+        }
+        clientsById.put(client.getClientId(), client);
+        leaderboard.track(client);
+    }
+
+    /**
+     * Re-registers a client read back from a snapshot or the journal; not journaled again.
+     */
+    public void restoreClient(Client client, Manager manager) {
+        addClient(client);
+        if (manager != null) {
+            manager.addClient(client);
+        }
     }
 
     public void removeClient(Client client) {
-        clients.remove(client);
+        clientsById.remove(client.getClientId());
+        clientsByEmail.remove(normalizeEmail(client.getEmail()), client);
+        leaderboard.untrack(client);
+    }
+
+    private static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
     }
 
 }
@@ -0,0 +1,119 @@
+package services;
+
+import models.Transaction;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Bounded, time-expiring record of the idempotency keys seen on money movements and the transaction
+ * each one produced. Lookups are a single probe of a concurrent hash map, so keyed requests on
+ * different accounts don't wait for each other; an expired entry simply reads as absent.
+ * <p>
+ * Entries are also queued in the order they were recorded (their transactions' timestamps).
+ * Dropping expired entries is left to {@link #purgeExpired}, which callers run outside their account
+ * locks; the capacity bound evicts from the same oldest end when a key is recorded.
+ */
+public class IdempotencyCache {
+    public static final int DEFAULT_CAPACITY = 100_000;
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofHours(24);
+
+    private final int capacity;
+    private final long timeToLiveMicros;
+    private final Map<String, Recorded> entries = new ConcurrentHashMap<>();
+    // Oldest first; may still hold entries already evicted or replaced, which are skipped
+    private final Queue<Recorded> recordOrder = new ConcurrentLinkedQueue<>();
+    // Only one thread evicts at a time, so it never takes an entry another one had checked
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    public IdempotencyCache(int capacity, Duration timeToLive) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The idempotency cache needs room for at least one key");
+        }
+        if (timeToLive == null || timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("The idempotency time to live must be positive");
+        }
+        this.capacity = capacity;
+        this.timeToLiveMicros = timeToLive.toNanos() / 1_000L;
+    }
+
+    /**
+     * The transaction first posted under {@code key}, or null if the key is unknown or has expired.
+     */
+    public Transaction find(String key, long nowMicros) {
+        Recorded entry = entries.get(key);
+        return entry == null || entry.recordedMicros < nowMicros - timeToLiveMicros ? null : entry.transaction;
+    }
+
+    public void record(String key, Transaction transaction) {
+        Recorded entry = new Recorded(key, transaction, transaction.getTimestamp());
+        entries.put(key, entry);
+        recordOrder.offer(entry);
+        if (entries.size() > capacity && evictionLock.tryLock()) {
+            try {
+                while (entries.size() > capacity) {
+                    Recorded oldest = recordOrder.poll();
+                    if (oldest == null) {
+                        break;
+                    }
+                    entries.remove(oldest.key, oldest);
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Drops the entries that have expired; cheap when none has. Skipped if another thread is at it.
+     */
+    public void purgeExpired(long nowMicros) {
+        long cutoff = nowMicros - timeToLiveMicros;
+        Recorded oldest = recordOrder.peek();
+        if (oldest == null || oldest.recordedMicros >= cutoff || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            for (oldest = recordOrder.peek(); oldest != null && oldest.recordedMicros < cutoff; oldest = recordOrder.peek()) {
+                recordOrder.poll();
+                entries.remove(oldest.key, oldest);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Oldest first, for snapshots
+    void forEach(BiConsumer<String, Transaction> action) {
+        for (Recorded entry : recordOrder) {
+            if (entries.get(entry.key) == entry) {
+                action.accept(entry.key, entry.transaction);
+            }
+        }
+    }
+
+    private static final class Recorded {
+        final String key;
+        final Transaction transaction;
+        final long recordedMicros;
+
+        Recorded(String key, Transaction transaction, long recordedMicros) {
+            this.key = key;
+            this.transaction = transaction;
+            this.recordedMicros = recordedMicros;
+        }
+    }
+}
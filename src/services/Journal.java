@@ -0,0 +1,729 @@
+package services;
+
+import models.Account;
+import models.Client;
+import models.Manager;
+import models.Transaction;
+import models.enums.AccountType;
+import models.enums.DurabilityMode;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary write-ahead journal of every ledger mutation and client/account/manager
+ * lifecycle change. Each record is framed as
+ * {@code [int length][int crc32][long sequence][byte type][fields]}, where length and CRC cover
+ * everything after the CRC. Strings are an int byte length and UTF-8.
+ * <p>
+ * Services encode a change's {@link Record} before making the change, so a change that can't be
+ * journaled is refused before anything is mutated. They append it while still holding the locks
+ * that ordered the change, which assigns its sequence number, then call {@link #awaitDurable(long)}
+ * after releasing them. How long that
+ * waits depends on the {@link DurabilityMode}: in SYNC the record was already forced inside
+ * {@code append}; in GROUP_COMMIT a background flusher forces everything appended during one commit
+ * window with a single fsync and wakes every writer it covered; in ASYNC writers never wait.
+ * <p>
+ * Every change also holds the shared side of a checkpoint gate ({@link #beginChange()}) from its
+ * first in-memory write to its journal append, so {@link #checkpoint} can capture state that
+ * matches exactly one sequence number and then empty the journal.
+ */
+public class Journal implements Closeable {
+    public static final byte CLIENT_CREATED = 1;
+    public static final byte CLIENT_UPDATED = 2;
+    public static final byte CLIENT_DELETED = 3;
+    public static final byte ACCOUNT_CREATED = 4;
+    public static final byte ACCOUNT_TYPE_CHANGED = 5;
+    public static final byte ACCOUNT_BALANCE_SET = 6;
+    public static final byte ACCOUNT_DELETED = 7;
+    public static final byte TRANSACTION_POSTED = 8;
+    public static final byte TRANSACTION_DESCRIPTION_UPDATED = 9;
+    public static final byte TRANSACTION_DELETED = 10;
+    public static final byte MANAGER_CREATED = 11;
+    public static final byte TRANSACTIONS_POSTED = 12; // a whole batch, so it replays all or nothing
+    public static final byte KEYED_TRANSACTION_POSTED = 13; // TRANSACTION_POSTED with its idempotency key
+
+    static final int HEADER_BYTES = 8; // length + crc
+    private static final int MAX_BATCH_BYTES = 1 << 20;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final DurabilityMode mode;
+    private final long commitWindowNanos;
+    private final Thread flusher;
+
+    // Guards the pending batch, the sequence counter and the closed flag
+    private final ReentrantLock bufferLock = new ReentrantLock();
+    private final Condition recordsPending = bufferLock.newCondition();
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024); // appended, not yet handed to the channel
+    private long appendedSequence;
+    private volatile boolean closed;
+
+    // Serializes write + force so batches reach the file in sequence order
+    private final ReentrantLock channelLock = new ReentrantLock();
+    private ByteBuffer spare = ByteBuffer.allocate(64 * 1024); // guarded by channelLock, swapped with pending
+
+    private final ReentrantLock durableLock = new ReentrantLock();
+    private final Condition durableAdvanced = durableLock.newCondition();
+    private volatile long durableSequence;
+    private volatile IOException failure;
+
+    private final ReentrantReadWriteLock changeGate = new ReentrantReadWriteLock();
+    private volatile boolean replaying; // appends are dropped while replay re-applies old records
+
+    /**
+     * Opens (or creates) the journal at {@code path} for appending. Sequence numbers continue from
+     * {@code lastSequence}, the highest one already in the file.
+     */
+    public Journal(Path path, DurabilityMode mode, long commitWindowMicros, long lastSequence) throws IOException {
+        if (mode == null) {
+            throw new IllegalArgumentException("A durability mode is required");
+        }
+        if (commitWindowMicros < 0) {
+            throw new IllegalArgumentException("The commit window can't be negative");
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.mode = mode;
+        this.commitWindowNanos = commitWindowMicros * 1_000L;
+        this.appendedSequence = lastSequence;
+        this.durableSequence = lastSequence;
+        if (mode == DurabilityMode.SYNC) {
+            this.flusher = null;
+        } else {
+            this.flusher = new Thread(this::runFlusher, "journal-flusher");
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        }
+    }
+
+    public Journal(Path path, DurabilityMode mode, long commitWindowMicros) throws IOException {
+        this(path, mode, commitWindowMicros, 0L);
+    }
+
+    // No-op journal for services running without persistence
+    private Journal() {
+        this.path = null;
+        this.channel = null;
+        this.mode = DurabilityMode.ASYNC;
+        this.commitWindowNanos = 0L;
+        this.flusher = null;
+    }
+
+    public static Journal disabled() {
+        return new Journal();
+    }
+
+    public boolean isEnabled() {
+        return channel != null;
+    }
+
+    public DurabilityMode getMode() {
+        return mode;
+    }
+
+    public Record clientCreated(Client client, Manager manager) {
+        return record(CLIENT_CREATED, out -> {
+            writeString(out, client.getClientId());
+            writeString(out, client.getFirstName());
+            writeString(out, client.getLastName());
+            writeString(out, client.getEmail());
+            writeString(out, client.getPassword());
+            writeNullable(out, manager == null ? null : manager.getEmail());
+        });
+    }
+
+    // The client's details as they will be after the update
+    public Record clientUpdated(String clientId, String firstName, String lastName, String email) {
+        return record(CLIENT_UPDATED, out -> {
+            writeString(out, clientId);
+            writeString(out, firstName);
+            writeString(out, lastName);
+            writeString(out, email);
+        });
+    }
+
+    public Record clientDeleted(Client client, Manager manager) {
+        return record(CLIENT_DELETED, out -> {
+            writeString(out, client.getClientId());
+            writeNullable(out, manager == null ? null : manager.getEmail());
+        });
+    }
+
+    public Record accountCreated(Account account, long initialBalanceInCentimes) {
+        return record(ACCOUNT_CREATED, out -> {
+            writeString(out, account.getAccountId());
+            writeString(out, account.getClient().getClientId());
+            out.writeByte(account.getAccountType().ordinal());
+            out.writeLong(initialBalanceInCentimes);
+        });
+    }
+
+    public Record accountTypeChanged(String accountId, AccountType accountType) {
+        return record(ACCOUNT_TYPE_CHANGED, out -> {
+            writeString(out, accountId);
+            out.writeByte(accountType.ordinal());
+        });
+    }
+
+    public Record accountBalanceSet(String accountId, long balanceInCentimes) {
+        return record(ACCOUNT_BALANCE_SET, out -> {
+            writeString(out, accountId);
+            out.writeLong(balanceInCentimes);
+        });
+    }
+
+    public Record accountDeleted(String accountId) {
+        return record(ACCOUNT_DELETED, out -> writeString(out, accountId));
+    }
+
+    /**
+     * Records a posted deposit, withdrawal or transfer, with the date the ledger stamped on it (read
+     * when the record is appended).
+     */
+    public Record transactionPosted(Transaction transaction) {
+        return record(TRANSACTION_POSTED, out -> writeTransaction(out, transaction));
+    }
+
+    public Record transactionPosted(Transaction transaction, String idempotencyKey) {
+        return record(KEYED_TRANSACTION_POSTED, out -> {
+            writeString(out, idempotencyKey);
+            writeTransaction(out, transaction);
+        });
+    }
+
+    // The count, then per transaction its (nullable) idempotency key and the fields of TRANSACTION_POSTED
+    public Record transactionsPosted(List<Transaction> transactions, List<String> idempotencyKeys) {
+        return record(TRANSACTIONS_POSTED, out -> {
+            out.writeInt(transactions.size());
+            for (int i = 0; i < transactions.size(); i++) {
+                writeNullable(out, idempotencyKeys.get(i));
+                writeTransaction(out, transactions.get(i));
+            }
+        });
+    }
+
+    public Record transactionDescriptionUpdated(String transactionId, String description) {
+        return record(TRANSACTION_DESCRIPTION_UPDATED, out -> {
+            writeString(out, transactionId);
+            writeNullable(out, description);
+        });
+    }
+
+    public Record transactionDeleted(String transactionId) {
+        return record(TRANSACTION_DELETED, out -> writeString(out, transactionId));
+    }
+
+    public Record managerCreated(Manager manager) {
+        return record(MANAGER_CREATED, out -> {
+            writeString(out, manager.getManagerId());
+            writeString(out, manager.getFirstName());
+            writeString(out, manager.getLastName());
+            writeString(out, manager.getEmail());
+            writeString(out, manager.getPassword());
+            out.writeByte(manager.getDepartment().ordinal());
+        });
+    }
+
+    /**
+     * Blocks until the record with this sequence number is on disk, as far as the durability
+     * mode promises: immediately in SYNC (already forced) and ASYNC (never waits).
+     */
+    public void awaitDurable(long sequence) {
+        if (mode != DurabilityMode.GROUP_COMMIT || durableSequence >= sequence) {
+            checkFailure();
+            return;
+        }
+        durableLock.lock();
+        try {
+            while (durableSequence < sequence) {
+                checkFailure();
+                durableAdvanced.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the journal", e);
+        } finally {
+            durableLock.unlock();
+        }
+        checkFailure();
+    }
+
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    // Sequence number of the last record appended, durable or not
+    public long getAppendedSequence() {
+        bufferLock.lock();
+        try {
+            return appendedSequence;
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    /**
+     * Takes the shared side of the checkpoint gate; pair with {@link #endChange()} in a finally block.
+     * Take it before any account lock, and append the change's record before releasing it. Throws,
+     * without the gate, once the journal is closed or has failed, so nothing is changed that can't
+     * be journaled.
+     */
+    public void beginChange() {
+        if (channel != null) {
+            changeGate.readLock().lock();
+            checkWritable();
+        }
+    }
+
+    /**
+     * {@link #beginChange()} that gives up after the timeout, for a thread that has to keep serving
+     * other work while a checkpoint is waiting. A thread already holding the gate always gets it.
+     */
+    public boolean tryBeginChange(long timeoutNanos) {
+        if (channel == null) {
+            return true;
+        }
+        try {
+            if (!changeGate.readLock().tryLock(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a checkpoint", e);
+        }
+        checkWritable();
+        return true;
+    }
+
+    // Called with the gate just taken: gives it back and throws if no record could be appended now
+    private void checkWritable() {
+        if (closed || failure != null) {
+            changeGate.readLock().unlock();
+            if (closed) {
+                throw new IllegalStateException("The journal is closed");
+            }
+            checkFailure();
+        }
+    }
+
+    public void endChange() {
+        if (channel != null) {
+            changeGate.readLock().unlock();
+        }
+    }
+
+    // Whether a checkpoint is waiting for the changes in progress to end
+    public boolean isCheckpointWaiting() {
+        return channel != null && changeGate.hasQueuedThreads();
+    }
+
+    /**
+     * Holds off every change, forces the journal and runs the task with the last sequence number it
+     * holds: the state in memory is exactly the result of records up to that number. Once the task
+     * returns (having made that state durable) the journal is emptied; sequence numbers carry on.
+     */
+    public long checkpoint(CheckpointTask task) throws IOException {
+        if (channel == null) {
+            throw new IllegalStateException("The journal is disabled");
+        }
+        changeGate.writeLock().lock();
+        try {
+            flush();
+            long sequence;
+            bufferLock.lock();
+            try {
+                sequence = appendedSequence;
+            } finally {
+                bufferLock.unlock();
+            }
+            task.run(sequence);
+            channelLock.lock();
+            try {
+                channel.truncate(0L);
+                channel.force(true);
+            } finally {
+                channelLock.unlock();
+            }
+            return sequence;
+        } finally {
+            changeGate.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Feeds every record after {@code afterSequence} to the handler, with appends suppressed so the
+     * services it drives don't journal them again. A torn or corrupt tail (a crash mid-write) ends the
+     * replay and is cut off, so new records follow the last good one. Call before anything is appended.
+     * Returns how many records were applied.
+     */
+    public long replay(long afterSequence, RecordHandler handler) throws IOException {
+        if (channel == null) {
+            return 0L;
+        }
+        long applied = 0L;
+        long lastSequence = afterSequence;
+        long validLength = 0L;
+        long fileLength = channel.size();
+        replaying = true;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            while (validLength + HEADER_BYTES <= fileLength) {
+                int length = in.readInt();
+                int crc = in.readInt();
+                if (length < 9 || validLength + HEADER_BYTES + length > fileLength) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                CRC32 check = new CRC32();
+                check.update(body, 0, length);
+                if ((int) check.getValue() != crc) {
+                    break;
+                }
+                validLength += HEADER_BYTES + length;
+                long sequence = ByteBuffer.wrap(body).getLong();
+                if (sequence > afterSequence) {
+                    handler.apply(body[8], new DataInputStream(new ByteArrayInputStream(body, 9, length - 9)));
+                    applied++;
+                }
+                lastSequence = Math.max(lastSequence, sequence);
+            }
+        } finally {
+            replaying = false;
+        }
+        channelLock.lock();
+        try {
+            if (validLength < fileLength) {
+                channel.truncate(validLength);
+            }
+        } finally {
+            channelLock.unlock();
+        }
+        bufferLock.lock();
+        try {
+            appendedSequence = Math.max(appendedSequence, lastSequence);
+            durableSequence = appendedSequence;
+        } finally {
+            bufferLock.unlock();
+        }
+        return applied;
+    }
+
+    /**
+     * Forces everything appended so far to disk, whatever the mode.
+     */
+    public void flush() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            writeAndForce();
+        } catch (IOException e) {
+            fail(e);
+        }
+        checkFailure();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        bufferLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            recordsPending.signalAll();
+        } finally {
+            bufferLock.unlock();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        writeAndForce();
+        channel.close();
+    }
+
+    /**
+     * Appends a record encoded by one of the methods above and returns its sequence number (0 when
+     * the journal is disabled or replaying).
+     */
+    public long append(Record record) {
+        if (channel == null || replaying || record.fields == null) {
+            return 0L;
+        }
+        byte[] fields = record.stamp();
+        if (mode == DurabilityMode.SYNC) {
+            // Holding the channel across append and force gives every record its own fsync
+            channelLock.lock();
+            try {
+                long sequence = enqueue(fields);
+                try {
+                    writeAndForce();
+                } catch (IOException e) {
+                    fail(e);
+                }
+                checkFailure();
+                return sequence;
+            } finally {
+                channelLock.unlock();
+            }
+        }
+        return enqueue(fields);
+    }
+
+    private long enqueue(byte[] fields) {
+        bufferLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The journal is closed");
+            }
+            checkFailure();
+            long sequence = ++appendedSequence;
+            CRC32 crc = new CRC32();
+            ByteBuffer sequenceBytes = ByteBuffer.allocate(8).putLong(0, sequence);
+            crc.update(sequenceBytes.array(), 0, 8);
+            crc.update(fields, 0, fields.length);
+
+            ensurePending(HEADER_BYTES + 8 + fields.length);
+            pending.putInt(8 + fields.length).putInt((int) crc.getValue()).putLong(sequence).put(fields);
+            // The first record of a batch starts the flusher's commit window; a full batch ends it
+            if (pending.position() == HEADER_BYTES + 8 + fields.length || pending.position() >= MAX_BATCH_BYTES) {
+                recordsPending.signal();
+            }
+            return sequence;
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            bufferLock.lock();
+            try {
+                while (!closed && pending.position() == 0) {
+                    recordsPending.await();
+                }
+                if (closed) {
+                    return;
+                }
+                // Let more writers join this batch for one commit window, unless it is already large
+                long remaining = commitWindowNanos;
+                while (!closed && pending.position() < MAX_BATCH_BYTES && remaining > 0L) {
+                    remaining = recordsPending.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                return; // close() flushes whatever is left
+            } finally {
+                bufferLock.unlock();
+            }
+            try {
+                writeAndForce();
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+        }
+    }
+
+    // Hands the pending batch to the channel and forces it; one caller at a time, in sequence order.
+    private void writeAndForce() throws IOException {
+        channelLock.lock();
+        try {
+            ByteBuffer batch;
+            long batchSequence;
+            bufferLock.lock();
+            try {
+                if (pending.position() == 0) {
+                    return;
+                }
+                pending.flip();
+                batch = pending;
+                batchSequence = appendedSequence;
+                pending = spare;
+            } finally {
+                bufferLock.unlock();
+            }
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            channel.force(false);
+            batch.clear();
+            spare = batch;
+            durableLock.lock();
+            try {
+                durableSequence = batchSequence;
+                durableAdvanced.signalAll();
+            } finally {
+                durableLock.unlock();
+            }
+        } finally {
+            channelLock.unlock();
+        }
+    }
+
+    private void ensurePending(int bytes) {
+        if (pending.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+    }
+
+    private void fail(IOException e) {
+        failure = e;
+        durableLock.lock();
+        try {
+            durableAdvanced.signalAll();
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("Journal write failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    private Record record(byte type, RecordBody body) {
+        if (channel == null || replaying) {
+            return Record.NONE;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        RecordOutput out = new RecordOutput(bytes);
+        try {
+            out.writeByte(type);
+            body.write(out);
+            out.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode journal record", e);
+        }
+        return new Record(bytes.toByteArray(), out.dated, Arrays.copyOf(out.dateOffsets, out.dated.size()));
+    }
+
+    private static void writeTransaction(RecordOutput out, Transaction transaction) throws IOException {
+        writeString(out, transaction.getTransactionId());
+        out.writeByte(transaction.getTransactionType().ordinal());
+        out.writeLong(transaction.getAmountInCentimes());
+        out.writeDate(transaction);
+        writeNullable(out, transaction.getDescription());
+        writeString(out, transaction.getSourceAccount().getAccountId());
+        writeNullable(out, transaction.getDestinationAccount() == null ? null : transaction.getDestinationAccount().getAccountId());
+    }
+
+    private static void writeNullable(RecordOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            writeString(out, value);
+        }
+    }
+
+    // Unlike writeUTF, not capped at 64 KB of encoded text
+    private static void writeString(RecordOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+
+    /**
+     * A change's record, encoded before the change is made. The dates of the transactions in it are
+     * written again on append, since the ledger may move a date forward when it stores the transaction.
+     */
+    public static final class Record {
+        private static final Record NONE = new Record(null, null, null);
+
+        private final byte[] fields;
+        private final List<Transaction> dated;
+        private final int[] dateOffsets;
+
+        private Record(byte[] fields, List<Transaction> dated, int[] dateOffsets) {
+            this.fields = fields;
+            this.dated = dated;
+            this.dateOffsets = dateOffsets;
+        }
+
+        private byte[] stamp() {
+            ByteBuffer buffer = ByteBuffer.wrap(fields);
+            for (int i = 0; i < dateOffsets.length; i++) {
+                buffer.putLong(dateOffsets[i], dated.get(i).getTimestamp());
+            }
+            return fields;
+        }
+    }
+
+    private static final class RecordOutput extends DataOutputStream {
+        private final List<Transaction> dated = new ArrayList<>(1);
+        private int[] dateOffsets = new int[1];
+
+        RecordOutput(ByteArrayOutputStream bytes) {
+            super(bytes);
+        }
+
+        // Writes the transaction's date and remembers where, for Record.stamp
+        void writeDate(Transaction transaction) throws IOException {
+            if (dated.size() == dateOffsets.length) {
+                dateOffsets = Arrays.copyOf(dateOffsets, dateOffsets.length * 2);
+            }
+            dateOffsets[dated.size()] = size();
+            dated.add(transaction);
+            writeLong(transaction.getTimestamp());
+        }
+    }
+
+    private interface RecordBody {
+        void write(RecordOutput out) throws IOException;
+    }
+
+    /**
+     * Receives one replayed record: its type and its fields, in the order the matching
+     * {@code Journal} method wrote them.
+     */
+    public interface RecordHandler {
+        void apply(byte type, DataInputStream fields) throws IOException;
+    }
+
+    public interface CheckpointTask {
+        void run(long sequence) throws IOException;
+    }
+}
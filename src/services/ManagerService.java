@@ -4,33 +4,67 @@ import models.Manager;
 import models.Client;
 import models.Account;
 import models.Transaction;
+import models.TransactionPage;
 import models.enums.DepartmentType;
 import models.enums.AccountType;
 import models.enums.TransactionType;
+import utils.Money;
 
-import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class ManagerService {
     private final List<Manager> managers;
+    // Managers indexed by normalized (trimmed, lower-case) email for O(1) login.
+    private final Map<String, Manager> managersByEmail;
     private final ClientService clientService;
     private final AccountService accountService;
     private final TransactionService transactionService;
+    private final Journal journal;
+    private volatile ReportEngine reports; // null: reports run on the calling thread
+
+    private static final double HIGH_AMOUNT_THRESHOLD = 10000.0;
 
     public ManagerService(ClientService clientService, AccountService accountService, TransactionService transactionService) {
-        this.managers = new ArrayList<>();
+        this(clientService, accountService, transactionService, Journal.disabled());
+    }
+
+    // The built-in admin is recreated on every start, so only managers added later are journaled
+    public ManagerService(ClientService clientService, AccountService accountService, TransactionService transactionService, Journal journal) {
+        this.managers = new CopyOnWriteArrayList<>();
+        this.managersByEmail = new ConcurrentHashMap<>();
         this.clientService = clientService;
         this.accountService = accountService;
         this.transactionService = transactionService;
+        this.journal = journal;
         Manager defaultManager = new Manager("Admin", "Manager", "admin@bank.ma", "admin123", DepartmentType.IT);
-        managers.add(defaultManager);
+        addManager(defaultManager);
+    }
+
+    /**
+     * Runs the account statistics, the total balance and the suspicious-transaction scan on a
+     * dedicated pool of the given parallelism from now on.
+     */
+    public synchronized ReportEngine startReports(int parallelism) {
+        if (reports != null) {
+            throw new IllegalStateException("The report engine is already running");
+        }
+        reports = new ReportEngine(transactionService, accountService, parallelism);
+        return reports;
+    }
+
+    public ReportEngine getReports() {
+        return reports;
     }
 
     public Manager createManager(String firstName, String lastName, String email, String password, DepartmentType department) {
@@ -42,13 +76,17 @@ public class ManagerService {
             throw new IllegalArgumentException("All manager information must be provided");
         }
 
-        Optional<Manager> existingManager = findManagerByEmail(email);
-        if (existingManager.isPresent()) {
-            throw new IllegalArgumentException("Manager with this email already exists");
-        }
-
         Manager manager = new Manager(firstName, lastName, email, password, department);
-        managers.add(manager);
+        Journal.Record record = journal.managerCreated(manager);
+        long sequence;
+        journal.beginChange();
+        try {
+            addManager(manager);
+            sequence = journal.append(record);
+        } finally {
+            journal.endChange();
+        }
+        journal.awaitDurable(sequence);
         return manager;
     }
 
@@ -57,9 +95,7 @@ public class ManagerService {
             throw new IllegalArgumentException("Email is required");
         }
 
-        return managers.stream()
-                .filter(manager -> manager.getEmail().equals(email))
-                .findFirst();
+        return Optional.ofNullable(managersByEmail.get(normalizeEmail(email)));
     }
 
     public List<Manager> getAllManagers() {
@@ -109,64 +145,76 @@ public class ManagerService {
         return clientService.getClientTransactionHistory(clientId);
     }
 
+    // The ledger's rows are kept in date order as they are appended, so reading them backwards is
+    // the bank-wide newest-first view, with no walk over clients and accounts and no sort.
     public List<Transaction> getAllTransactions() {
-        return clientService.getAllClients()
-                .stream()
-                .flatMap(client -> client.getAccounts().stream())
-                .flatMap(account -> account.getTransactions().stream())
-                .sorted(Comparator.comparing(Transaction::getDate).reversed())
-                .collect(Collectors.toList());
+        return transactionService.getTransactionsNewestFirst();
+    }
+
+    /**
+     * The same view, lazily: constant memory however large the ledger, early exit on {@code limit}
+     * or {@code anyMatch}, and split by row range when made parallel.
+     */
+    public Stream<Transaction> streamAllTransactions() {
+        return transactionService.streamTransactions(true);
+    }
+
+    public Stream<Account> streamAllAccounts() {
+        return accountService.streamAccounts();
+    }
+
+    public Stream<Client> streamAllClients() {
+        return clientService.streamClients();
+    }
+
+    public TransactionPage getAllTransactionsPage(String cursor, int pageSize) {
+        return transactionService.getTransactionsPage(cursor, pageSize);
+    }
+
+    public TransactionPage getClientTransactionsPage(String clientId, String cursor, int pageSize) {
+        return clientService.getClientTransactionPage(clientId, cursor, pageSize);
     }
 
     public List<Transaction> filterTransactionsByType(TransactionType type) {
-        return getAllTransactions().stream()
-                .filter(transaction -> transaction.getTransactionType() == type)
-                .collect(Collectors.toList());
+        return transactionService.getTransactionsNewestFirst(type);
     }
 
+    // Walks the ledger's amount index; results come back in ascending amount order
     public List<Transaction> filterTransactionsByAmount(double minAmount, double maxAmount) {
-        return getAllTransactions().stream()
-                .filter(transaction -> transaction.getAmount() >= minAmount && transaction.getAmount() <= maxAmount)
-                .collect(Collectors.toList());
+        return transactionService.getTransactionsByAmountRange(minAmount, maxAmount);
     }
 
-    public List<Transaction> filterTransactionsByDate(LocalDateTime startDate, LocalDateTime endDate) {
-        return getAllTransactions().stream()
-                .filter(transaction -> {
-                    LocalDateTime transactionDate = transaction.getDate();
-                    return transactionDate.isAfter(startDate) && transactionDate.isBefore(endDate);
-                })
-                .collect(Collectors.toList());
+    /**
+     * Bank-wide transactions stamped in [startMicros, endMicros) (epoch microseconds), newest first, read from the ledger's time index.
+     */
+    public List<Transaction> filterTransactionsByDate(long startMicros, long endMicros) {
+        List<Transaction> transactions = transactionService.getTransactionsByDateRange(startMicros, endMicros);
+        Collections.reverse(transactions);
+        return transactions;
     }
 
     public List<Transaction> filterTransactions(Predicate<Transaction> filter) {
-        return getAllTransactions().stream()
+        return streamAllTransactions()
                 .filter(filter)
                 .collect(Collectors.toList());
     }
 
     public List<Transaction> detectSuspiciousTransactions() {
-        List<Transaction> suspiciousTransactions = new ArrayList<>();
-        List<Transaction> allTransactions = getAllTransactions();
-
-        double highAmountThreshold = 10000.0;
-
-        List<Transaction> highAmountTransactions = allTransactions
-                .stream()
-                .filter(transaction -> transaction.getAmount() > highAmountThreshold)
-                .collect(Collectors.toList());
-        suspiciousTransactions.addAll(highAmountTransactions);
-
-        return suspiciousTransactions.stream()
-                .distinct()
-                .sorted(Comparator.comparing(Transaction::getDate).reversed())
-                .collect(Collectors.toList());
+        ReportEngine reports = this.reports;
+        if (reports != null) {
+            return reports.transactionsAbove(Money.fromAmount(HIGH_AMOUNT_THRESHOLD));
+        }
+        return transactionService.getTransactionsAboveNewestFirst(HIGH_AMOUNT_THRESHOLD);
     }
 
     public double calculateTotalBalanceAllClients() {
-        return clientService.getAllClients().stream()
-                .mapToDouble(client -> clientService.calculateTotalBalance(client.getClientId()))
-                .sum();
+        ReportEngine reports = this.reports;
+        if (reports != null) {
+            return Money.toAmount(reports.totalBalanceInCentimes());
+        }
+        return Money.toAmount(accountService.streamAccounts()
+                .mapToLong(Account::getBalanceInCentimes)
+                .sum());
     }
 
     public double calculateTotalDepositsByClient(String clientId) {
@@ -182,35 +230,38 @@ public class ManagerService {
     }
 
     public Map<TransactionType, Long> getTransactionStatistics() {
-        return getAllTransactions().stream()
-                .collect(Collectors.groupingBy(Transaction::getTransactionType, Collectors.counting()));
+        return transactionService.countTransactionsByType();
     }
 
     public Map<AccountType, Long> getAccountTypeStatistics() {
-        return clientService.getAllClients().stream()
-                .flatMap(client -> client.getAccounts().stream())
+        ReportEngine reports = this.reports;
+        if (reports != null) {
+            return reports.accountTypeStatistics();
+        }
+        return accountService.streamAccounts()
                 .collect(Collectors.groupingBy(Account::getAccountType, Collectors.counting()));
     }
 
     public List<Client> getTopClientsByBalance(int limit) {
-        return clientService.getAllClients().stream()
-                .sorted((c1, c2) -> Double.compare(
-                    clientService.calculateTotalBalance(c2.getClientId()),
-                    clientService.calculateTotalBalance(c1.getClientId())
-                ))
-                .limit(limit)
-                .collect(Collectors.toList());
+        return clientService.getTopClientsByBalance(limit);
+    }
+
+    public int getClientBalanceRank(String clientId) {
+        return clientService.getBalanceRank(clientId);
     }
 
     public boolean validateManagerCredentials(String email, String password) {
-        return managers.stream()
-                .anyMatch(manager -> manager.getEmail().equals(email) && manager.getPassword().equals(password));
+        if (email == null) {
+            return false;
+        }
+        Manager manager = managersByEmail.get(normalizeEmail(email));
+        return manager != null && manager.getPassword().equals(password);
     }
 
     public boolean validateSufficientBalance(String accountId, double amount) {
         try {
             Account account = accountService.findAccountById(accountId);
-            return account.getBalance() >= amount;
+            return account.getBalanceInCentimes() >= Money.fromAmount(amount);
         } catch (NoSuchElementException e) {
             return false;
         }
@@ -219,10 +270,31 @@ public class ManagerService {
 
 
     public void addManager(Manager manager) {
+        if (managersByEmail.putIfAbsent(normalizeEmail(manager.getEmail()), manager) != null) {
+            throw new IllegalArgumentException("Manager with this email already exists");
+        }
         managers.add(manager);
     }
 
+    /**
+     * Re-registers a manager read back from a snapshot or the journal, not journaled again. Returns the
+     * manager already registered under that email instead, e.g. the built-in admin.
+     */
+    public Manager restoreManager(Manager manager) {
+        Manager existing = managersByEmail.get(normalizeEmail(manager.getEmail()));
+        if (existing != null) {
+            return existing;
+        }
+        addManager(manager);
+        return manager;
+    }
+
     public void removeManager(Manager manager) {
+        managersByEmail.remove(normalizeEmail(manager.getEmail()), manager);
         managers.remove(manager);
     }
+
+    private static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
 }
@@ -0,0 +1,170 @@
+package services;
+
+import models.Account;
+import models.Client;
+import models.Manager;
+import models.Transaction;
+import models.enums.AccountType;
+import models.enums.DepartmentType;
+import models.enums.TransactionType;
+import utils.Money;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable state for the services: recovery at startup (load the latest snapshot, then replay the
+ * journal records written after it) and periodic checkpoints (write a fresh snapshot and empty the
+ * journal), so a restart never replays more than one checkpoint interval of journal.
+ */
+public class PersistenceService implements Closeable {
+    private final Path snapshotPath;
+    private final Journal journal;
+    private final ClientService clientService;
+    private final AccountService accountService;
+    private final TransactionService transactionService;
+    private final ManagerService managerService;
+    private ScheduledExecutorService scheduler;
+
+    public PersistenceService(Path snapshotPath, Journal journal, ClientService clientService, AccountService accountService,
+                              TransactionService transactionService, ManagerService managerService) {
+        this.snapshotPath = snapshotPath;
+        this.journal = journal;
+        this.clientService = clientService;
+        this.accountService = accountService;
+        this.transactionService = transactionService;
+        this.managerService = managerService;
+    }
+
+    /**
+     * Restores the state left by the previous run into the (still empty) services. Returns false if
+     * there was nothing to restore: no snapshot and an empty journal.
+     */
+    public boolean recover() throws IOException {
+        long snapshotSequence = SnapshotFile.load(snapshotPath, managerService, clientService, accountService, transactionService);
+        long replayed = journal.replay(Math.max(0L, snapshotSequence), this::apply);
+        return snapshotSequence >= 0 || replayed > 0;
+    }
+
+    /**
+     * Writes a snapshot of the current state and empties the journal; changes wait meanwhile.
+     * Returns the journal sequence the snapshot covers.
+     */
+    public long checkpoint() throws IOException {
+        return journal.checkpoint(sequence ->
+                SnapshotFile.write(snapshotPath, sequence, managerService, clientService, accountService, transactionService));
+    }
+
+    public void startCheckpoints(long intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            throw new IllegalArgumentException("The checkpoint interval must be positive");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Checkpoint failed: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops periodic checkpoints, takes a last one so the next start has nothing to replay, and closes the journal.
+     */
+    @Override
+    public void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        checkpoint();
+        journal.close();
+    }
+
+    // Decodes one journal record; fields are read in the order the matching Journal method wrote them.
+    private void apply(byte type, DataInputStream in) throws IOException {
+        switch (type) {
+            case Journal.CLIENT_CREATED: {
+                Client client = new Client(Journal.readString(in), Journal.readString(in), Journal.readString(in),
+                        Journal.readString(in), Journal.readString(in));
+                clientService.restoreClient(client, findManager(Journal.readNullable(in)));
+                break;
+            }
+            case Journal.CLIENT_UPDATED:
+                clientService.updateClient(Journal.readString(in), Journal.readString(in), Journal.readString(in),
+                        Journal.readString(in));
+                break;
+            case Journal.CLIENT_DELETED: {
+                String clientId = Journal.readString(in);
+                clientService.deleteClient(findManager(Journal.readNullable(in)), clientId);
+                break;
+            }
+            case Journal.ACCOUNT_CREATED: {
+                String accountId = Journal.readString(in);
+                Client client = clientService.findClientById(Journal.readString(in));
+                accountService.restoreAccount(new Account(accountId, AccountType.values()[in.readByte()], client, in.readLong()));
+                break;
+            }
+            case Journal.ACCOUNT_TYPE_CHANGED:
+                accountService.updateAccountType(Journal.readString(in), AccountType.values()[in.readByte()]);
+                break;
+            case Journal.ACCOUNT_BALANCE_SET:
+                accountService.updateAccountBalance(Journal.readString(in), Money.toAmount(in.readLong()));
+                break;
+            case Journal.ACCOUNT_DELETED:
+                accountService.deleteAccount(Journal.readString(in));
+                break;
+            case Journal.TRANSACTION_POSTED:
+                restoreTransaction(in);
+                break;
+            case Journal.TRANSACTIONS_POSTED:
+                for (int count = in.readInt(); count > 0; count--) {
+                    String idempotencyKey = Journal.readNullable(in);
+                    Transaction transaction = restoreTransaction(in);
+                    if (idempotencyKey != null) {
+                        transactionService.restoreIdempotencyKey(idempotencyKey, transaction);
+                    }
+                }
+                break;
+            case Journal.KEYED_TRANSACTION_POSTED: {
+                String idempotencyKey = Journal.readString(in);
+                transactionService.restoreIdempotencyKey(idempotencyKey, restoreTransaction(in));
+                break;
+            }
+            case Journal.TRANSACTION_DESCRIPTION_UPDATED:
+                transactionService.updateTransaction(Journal.readString(in), Journal.readNullable(in));
+                break;
+            case Journal.TRANSACTION_DELETED:
+                transactionService.deleteTransaction(Journal.readString(in));
+                break;
+            case Journal.MANAGER_CREATED: {
+                String managerId = Journal.readString(in);
+                Manager manager = new Manager(Journal.readString(in), Journal.readString(in), Journal.readString(in),
+                        Journal.readString(in), DepartmentType.values()[in.readByte()]);
+                manager.setManagerId(managerId);
+                managerService.restoreManager(manager);
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown journal record type: " + type);
+        }
+    }
+
+    private Transaction restoreTransaction(DataInputStream in) throws IOException {
+        return transactionService.restoreTransaction(Journal.readString(in), TransactionType.values()[in.readByte()],
+                in.readLong(), in.readLong(), Journal.readNullable(in), Journal.readString(in), Journal.readNullable(in));
+    }
+
+    private Manager findManager(String email) {
+        return email == null ? null : managerService.findManagerByEmail(email).orElse(null);
+    }
+}
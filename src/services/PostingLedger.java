@@ -0,0 +1,199 @@
+package services;
+
+import models.Account;
+import models.TrialBalance;
+import models.enums.LedgerAccount;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Double-entry record of every balance change, underneath TransactionService and AccountService.
+ * Each operation appends one entry of two postings that sum to zero: a posting to a customer account
+ * is the change it made to that account's balance, and the other leg is on the other customer account
+ * of a transfer or on one of the bank's {@link LedgerAccount}s. Postings are never changed or removed
+ * (deleting a transaction doesn't give the money back either), so an account's balance is a cached
+ * view of the sum of its postings, and {@link #trialBalance()} checks exactly that.
+ * <p>
+ * Postings are chunked primitive columns like the transaction store's, and accounts are the store's
+ * ordinals; the bank's accounts take the negative ordinals below {@link TransactionStore#NO_ACCOUNT}.
+ * An entry is written by whoever holds the locks of the customer accounts it touches, and published
+ * whole through the volatile posting count.
+ */
+public class PostingLedger {
+    private static final byte ENTRY_START = 1;
+    private static final int LEDGER_ACCOUNTS = LedgerAccount.values().length;
+
+    private final TransactionStore store;
+    private final TransactionStore.IntColumn accounts = new TransactionStore.IntColumn();
+    private final TransactionStore.LongColumn amounts = new TransactionStore.LongColumn(); // signed centimes
+    private final TransactionStore.ByteColumn flags = new TransactionStore.ByteColumn();
+    private final Object appendLock = new Object();
+    private volatile int size;
+
+    public PostingLedger(TransactionStore store) {
+        this.store = store;
+    }
+
+    public void deposit(Account account, long amountInCentimes) {
+        append(ordinalOf(LedgerAccount.CASH), store.ordinalOf(account), amountInCentimes);
+    }
+
+    public void withdrawal(Account account, long amountInCentimes) {
+        append(store.ordinalOf(account), ordinalOf(LedgerAccount.CASH), amountInCentimes);
+    }
+
+    public void transfer(Account source, Account destination, long amountInCentimes) {
+        append(store.ordinalOf(source), store.ordinalOf(destination), amountInCentimes);
+    }
+
+    // First leg of a transfer between shards, or the refund of one that failed
+    public void toTransit(Account account, long amountInCentimes) {
+        append(store.ordinalOf(account), ordinalOf(LedgerAccount.IN_TRANSIT), amountInCentimes);
+    }
+
+    public void fromTransit(Account account, long amountInCentimes) {
+        append(ordinalOf(LedgerAccount.IN_TRANSIT), store.ordinalOf(account), amountInCentimes);
+    }
+
+    // A manager overriding the balance; the change may be negative
+    public void adjustment(Account account, long changeInCentimes) {
+        if (changeInCentimes != 0) {
+            append(ordinalOf(LedgerAccount.ADJUSTMENTS), store.ordinalOf(account), changeInCentimes);
+        }
+    }
+
+    // The account's whole current balance, when it is opened or restored from a snapshot
+    public void openingBalance(Account account) {
+        if (account.getBalanceInCentimes() != 0) {
+            append(ordinalOf(LedgerAccount.OPENING_BALANCES), store.ordinalOf(account), account.getBalanceInCentimes());
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Re-adds every posting, in parallel over contiguous ranges of whole entries, and compares each
+     * customer account's sum with its balance. Writers carry on meanwhile: the postings counted are
+     * those published when the check starts, and an account that seems off is re-checked under its
+     * lock with the postings it got since.
+     */
+    public TrialBalance trialBalance() {
+        int count = size;
+        Account[] accountsByOrdinal = store.accountsByOrdinal(); // covers every ordinal in the first count postings
+        int accountCount = accountsByOrdinal.length;
+        int segments = ForkJoinPool.getCommonPoolParallelism() + 1; // the calling thread joins in
+        Sums sums = IntStream.range(0, segments).parallel()
+                .mapToObj(segment -> sum(entryStartFrom((int) ((long) count * segment / segments), count),
+                        entryStartFrom((int) ((long) count * (segment + 1) / segments), count), accountCount))
+                .reduce(Sums::add)
+                .orElseGet(() -> new Sums(accountCount));
+        List<String> mismatched = IntStream.range(0, accountCount).parallel()
+                .filter(ordinal -> !matchesBalance(accountsByOrdinal[ordinal], ordinal, sums.balances[LEDGER_ACCOUNTS + ordinal], count))
+                .mapToObj(ordinal -> accountsByOrdinal[ordinal].getAccountId())
+                .collect(Collectors.toList());
+        long[] ledgerAccountBalances = new long[LEDGER_ACCOUNTS];
+        System.arraycopy(sums.balances, 0, ledgerAccountBalances, 0, LEDGER_ACCOUNTS);
+        return new TrialBalance(count, sums.entries, sums.total, sums.unbalancedEntries, ledgerAccountBalances, mismatched);
+    }
+
+    private void append(int debited, int credited, long amountInCentimes) {
+        synchronized (appendLock) {
+            int posting = size;
+            accounts.set(posting, debited);
+            amounts.set(posting, -amountInCentimes);
+            flags.set(posting, ENTRY_START);
+            accounts.set(posting + 1, credited);
+            amounts.set(posting + 1, amountInCentimes);
+            flags.set(posting + 1, (byte) 0);
+            size = posting + 2;
+        }
+    }
+
+    // Postings in [from, to), which start and end on entry boundaries
+    private Sums sum(int from, int to, int accountCount) {
+        Sums sums = new Sums(accountCount);
+        long entry = 0L;
+        for (int posting = from; posting < to; posting++) {
+            if (posting > from && flags.get(posting) == ENTRY_START) {
+                sums.closeEntry(entry);
+                entry = 0L;
+            }
+            long amount = amounts.get(posting);
+            entry += amount;
+            sums.balances[slotOf(accounts.get(posting))] += amount;
+        }
+        if (to > from) {
+            sums.closeEntry(entry);
+        }
+        return sums;
+    }
+
+    private int entryStartFrom(int posting, int count) {
+        while (posting < count && flags.get(posting) != ENTRY_START) {
+            posting++;
+        }
+        return posting;
+    }
+
+    private boolean matchesBalance(Account account, int ordinal, long postedUpToCount, int count) {
+        if (account.getBalanceInCentimes() == postedUpToCount) {
+            return true;
+        }
+        account.getLock().lock();
+        try {
+            // Every posting to the account is appended under its lock, so none can slip in now
+            long posted = postedUpToCount;
+            for (int posting = count, end = size; posting < end; posting++) {
+                if (accounts.get(posting) == ordinal) {
+                    posted += amounts.get(posting);
+                }
+            }
+            return account.getBalanceInCentimes() == posted;
+        } finally {
+            account.getLock().unlock();
+        }
+    }
+
+    private static int ordinalOf(LedgerAccount account) {
+        return TransactionStore.NO_ACCOUNT - 1 - account.ordinal();
+    }
+
+    // Bank accounts first, then customer accounts by ordinal
+    private static int slotOf(int ordinal) {
+        return ordinal >= 0 ? LEDGER_ACCOUNTS + ordinal : TransactionStore.NO_ACCOUNT - 1 - ordinal;
+    }
+
+    private static final class Sums {
+        final long[] balances;
+        long total;
+        int entries;
+        int unbalancedEntries;
+
+        Sums(int accountCount) {
+            this.balances = new long[LEDGER_ACCOUNTS + accountCount];
+        }
+
+        void closeEntry(long entry) {
+            total += entry;
+            entries++;
+            if (entry != 0) {
+                unbalancedEntries++;
+            }
+        }
+
+        Sums add(Sums other) {
+            for (int i = 0; i < balances.length; i++) {
+                balances[i] += other.balances[i];
+            }
+            total += other.total;
+            entries += other.entries;
+            unbalancedEntries += other.unbalancedEntries;
+            return this;
+        }
+    }
+}
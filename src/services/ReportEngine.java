@@ -0,0 +1,192 @@
+package services;
+
+import models.Account;
+import models.Transaction;
+import models.enums.AccountType;
+import models.enums.TransactionType;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+/**
+ * Manager reports computed in parallel on a dedicated fork-join pool, so they neither wait for nor
+ * crowd out other users of the common pool. The ledger is split into ranges of rows and the account
+ * table into ranges of accounts; each range is aggregated on its own, and the partial results are
+ * merged back up the split tree.
+ * <p>
+ * Rows are read under the store's read lock one range at a time. If the store is compacted while a
+ * report runs, its row numbers change, so the report starts over.
+ */
+public class ReportEngine implements Closeable {
+    private static final int ROWS_PER_TASK = 1 << 16;
+    private static final int ACCOUNTS_PER_TASK = 4096;
+    private static final TransactionType[] TYPES = TransactionType.values();
+    private static final AccountType[] ACCOUNT_TYPES = AccountType.values();
+
+    private final TransactionStore store;
+    private final AccountService accountService;
+    private final ForkJoinPool pool;
+
+    public ReportEngine(TransactionService transactionService, AccountService accountService, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("The report parallelism must be positive");
+        }
+        this.store = transactionService.getStore();
+        this.accountService = accountService;
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("report-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Recounts the live transactions of each type from the rows. The store also keeps these counts
+     * up to date as it goes, so this is for checking them.
+     */
+    public Map<TransactionType, Long> transactionStatistics() {
+        long[] counts = overRows((from, to, compactions) -> {
+            long[] partial = new long[TYPES.length];
+            store.forEachLiveRow(from, to, compactions, row -> partial[store.getType(row).ordinal()]++);
+            return partial;
+        }, ReportEngine::add);
+        Map<TransactionType, Long> statistics = new EnumMap<>(TransactionType.class);
+        for (TransactionType type : TYPES) {
+            if (counts[type.ordinal()] > 0) {
+                statistics.put(type, counts[type.ordinal()]);
+            }
+        }
+        return statistics;
+    }
+
+    // Amount strictly above the threshold, newest first
+    public List<Transaction> transactionsAbove(long thresholdInCentimes) {
+        return overRows((from, to, compactions) -> {
+            List<Transaction> partial = new ArrayList<>();
+            store.forEachLiveRow(from, to, compactions, row -> {
+                if (store.getAmount(row) > thresholdInCentimes) {
+                    partial.add(store.transactionAt(row));
+                }
+            });
+            Collections.reverse(partial);
+            return partial;
+        }, (older, newer) -> {
+            newer.addAll(older);
+            return newer;
+        });
+    }
+
+    public Map<AccountType, Long> accountTypeStatistics() {
+        long[] counts = overAccounts(accounts -> {
+            long[] partial = new long[ACCOUNT_TYPES.length];
+            for (Account account : accounts) {
+                partial[account.getAccountType().ordinal()]++;
+            }
+            return partial;
+        }, ReportEngine::add);
+        Map<AccountType, Long> statistics = new EnumMap<>(AccountType.class);
+        for (AccountType type : ACCOUNT_TYPES) {
+            if (counts[type.ordinal()] > 0) {
+                statistics.put(type, counts[type.ordinal()]);
+            }
+        }
+        return statistics;
+    }
+
+    public long totalBalanceInCentimes() {
+        return overAccounts(accounts -> {
+            long partial = 0L;
+            for (Account account : accounts) {
+                partial += account.getBalanceInCentimes();
+            }
+            return partial;
+        }, Long::sum);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private <R> R overRows(RowRangeReport<R> report, BinaryOperator<R> merge) {
+        while (true) {
+            int compactions = store.compactionCount();
+            int rows = store.size();
+            try {
+                return pool.invoke(new RangeTask<>((from, to) -> report.apply(from, to, compactions), merge, 0, rows, ROWS_PER_TASK));
+            } catch (ConcurrentModificationException e) {
+                // compacted meanwhile: the row numbers changed, so start over
+            }
+        }
+    }
+
+    private <R> R overAccounts(AccountRangeReport<R> report, BinaryOperator<R> merge) {
+        List<Account> accounts = accountService.getAllAccounts();
+        return pool.invoke(new RangeTask<>((from, to) -> report.apply(accounts.subList(from, to)), merge,
+                0, accounts.size(), ACCOUNTS_PER_TASK));
+    }
+
+    private static long[] add(long[] left, long[] right) {
+        for (int i = 0; i < left.length; i++) {
+            left[i] += right[i];
+        }
+        return left;
+    }
+
+    private interface RowRangeReport<R> {
+        R apply(int from, int to, int compactionsSeen);
+    }
+
+    private interface AccountRangeReport<R> {
+        R apply(List<Account> accounts);
+    }
+
+    private interface RangeReport<R> {
+        R apply(int from, int to);
+    }
+
+    // Splits [from, to) in halves down to the grain, then merges the left (earlier) result with the right one
+    private static final class RangeTask<R> extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeReport<R> report;
+        private final BinaryOperator<R> merge;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        RangeTask(RangeReport<R> report, BinaryOperator<R> merge, int from, int to, int grain) {
+            this.report = report;
+            this.merge = merge;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from <= grain) {
+                return report.apply(from, to);
+            }
+            int mid = (from + to) >>> 1;
+            RangeTask<R> left = new RangeTask<>(report, merge, from, mid, grain);
+            left.fork();
+            R right = new RangeTask<>(report, merge, mid, to, grain).compute();
+            return merge.apply(left.join(), right);
+        }
+    }
+}
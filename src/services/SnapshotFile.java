@@ -0,0 +1,365 @@
+package services;
+
+import models.Account;
+import models.Client;
+import models.Manager;
+import models.Transaction;
+import models.enums.AccountType;
+import models.enums.DepartmentType;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Binary checkpoint of the whole in-memory state: managers, clients, accounts with their balances,
+ * and the ledger's rows, account ordinals and description dictionary. Big-endian, with entities
+ * referring to each other by their position in the file, and IDs stored as two longs:
+ * <pre>
+ * long MAGIC, int VERSION, long journalSequence
+ * int managers  { id, firstName, lastName, email, password, byte department }
+ * int clients   { id, firstName, lastName, email, password, int manager (-1 none), bool live }
+ * int accounts  { id, int client, byte type, long balance, bool live }
+ * int ordinals  { int account }            (ledger account ordinal -&gt; account)
+ * int descriptions { string }              (ledger description code -&gt; text)
+ * int rows      { id, long micros, long amount, byte type, int source, int destination, int description }
+ * int keys      { string idempotencyKey, transaction id }   (oldest first; since version 2)
+ * long MAGIC
+ * </pre>
+ * Strings are an int byte length and UTF-8. Deleted accounts (and their clients) that the ledger
+ * still refers to are kept with {@code live = false} so old rows still resolve. Snapshots are
+ * written to a temporary file and renamed into place, and read back through memory-mapped windows.
+ */
+public class SnapshotFile {
+    private static final long MAGIC = 0x42414E4B534E4150L; // "BANKSNAP"
+    private static final int VERSION = 2;
+    private static final int NONE = -1;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes the state covered by {@code journalSequence} to {@code path}, atomically. The caller
+     * keeps every change out for the duration (see {@link Journal#checkpoint}).
+     */
+    public static void write(Path path, long journalSequence, ManagerService managerService, ClientService clientService,
+                             AccountService accountService, TransactionService transactionService) throws IOException {
+        TransactionStore store = transactionService.getStore();
+        List<Manager> managers = managerService.getAllManagers();
+        List<Client> clients = clientService.getAllClients();
+        List<Account> accounts = accountService.getAllAccounts();
+        int liveClients = clients.size();
+        int liveAccounts = accounts.size();
+
+        // Accounts deleted since they transacted are still referenced by the ledger, and accounts
+        // (live or not) may belong to a deleted client
+        Map<Account, Integer> accountPositions = positionsOf(accounts);
+        for (int ordinal = 0; ordinal < store.accountCount(); ordinal++) {
+            Account account = store.accountAt(ordinal);
+            if (!accountPositions.containsKey(account)) {
+                accountPositions.put(account, accounts.size());
+                accounts.add(account);
+            }
+        }
+        Map<Client, Integer> clientPositions = positionsOf(clients);
+        for (Account account : accounts) {
+            if (!clientPositions.containsKey(account.getClient())) {
+                clientPositions.put(account.getClient(), clients.size());
+                clients.add(account.getClient());
+            }
+        }
+        Map<Client, Integer> managerOf = new IdentityHashMap<>();
+        for (int i = 0; i < managers.size(); i++) {
+            for (Client client : managers.get(i).getClientList()) {
+                managerOf.put(client, i);
+            }
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 20))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalSequence);
+
+            out.writeInt(managers.size());
+            for (Manager manager : managers) {
+                writeId(out, manager.getManagerId());
+                writeString(out, manager.getFirstName());
+                writeString(out, manager.getLastName());
+                writeString(out, manager.getEmail());
+                writeString(out, manager.getPassword());
+                out.writeByte(manager.getDepartment().ordinal());
+            }
+
+            out.writeInt(clients.size());
+            for (int i = 0; i < clients.size(); i++) {
+                Client client = clients.get(i);
+                writeId(out, client.getClientId());
+                writeString(out, client.getFirstName());
+                writeString(out, client.getLastName());
+                writeString(out, client.getEmail());
+                writeString(out, client.getPassword());
+                Integer manager = managerOf.get(client);
+                out.writeInt(manager == null ? NONE : manager);
+                out.writeBoolean(i < liveClients);
+            }
+
+            out.writeInt(accounts.size());
+            for (int i = 0; i < accounts.size(); i++) {
+                Account account = accounts.get(i);
+                writeId(out, account.getAccountId());
+                out.writeInt(clientPositions.get(account.getClient()));
+                out.writeByte(account.getAccountType().ordinal());
+                out.writeLong(account.getBalanceInCentimes());
+                out.writeBoolean(i < liveAccounts);
+            }
+
+            int ordinals = store.accountCount();
+            out.writeInt(ordinals);
+            for (int ordinal = 0; ordinal < ordinals; ordinal++) {
+                out.writeInt(accountPositions.get(store.accountAt(ordinal)));
+            }
+            int descriptions = store.descriptionCount();
+            out.writeInt(descriptions);
+            for (int code = 0; code < descriptions; code++) {
+                writeString(out, store.descriptionAt(code));
+            }
+
+            out.writeInt(store.liveCount());
+            store.forEachLiveRow(row -> {
+                try {
+                    out.writeLong(store.getIdHigh(row));
+                    out.writeLong(store.getIdLow(row));
+                    out.writeLong(store.getTimestamp(row));
+                    out.writeLong(store.getAmount(row));
+                    out.writeByte(store.getType(row).ordinal());
+                    out.writeInt(store.getSourceOrdinal(row));
+                    out.writeInt(store.getDestinationOrdinal(row));
+                    out.writeInt(store.getDescriptionCode(row));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not write snapshot row", e);
+                }
+            });
+            List<String> keys = new ArrayList<>();
+            List<String> keyedTransactions = new ArrayList<>();
+            transactionService.getIdempotencyCache().forEach((key, transaction) -> {
+                keys.add(key);
+                keyedTransactions.add(transaction.getTransactionId());
+            });
+            out.writeInt(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                writeString(out, keys.get(i));
+                writeId(out, keyedTransactions.get(i));
+            }
+            out.writeLong(MAGIC);
+            out.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(path.toAbsolutePath().getParent());
+    }
+
+    // Makes the rename itself durable where the platform allows syncing a directory
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform; the rename is still atomic
+        }
+    }
+
+    /**
+     * Loads the snapshot into freshly constructed services and returns the journal sequence it
+     * covers, or -1 if there is no snapshot at {@code path}.
+     */
+    public static long load(Path path, ManagerService managerService, ClientService clientService,
+                            AccountService accountService, TransactionService transactionService) throws IOException {
+        if (!Files.exists(path)) {
+            return NONE;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedInput in = new MappedInput(channel);
+            int version = in.readLong() == MAGIC ? in.readInt() : 0;
+            if (version < 1 || version > VERSION) {
+                throw new IllegalStateException("Not a bank snapshot: " + path);
+            }
+            long journalSequence = in.readLong();
+
+            Manager[] managers = new Manager[in.readInt()];
+            for (int i = 0; i < managers.length; i++) {
+                String id = in.readId();
+                Manager manager = new Manager(in.readString(), in.readString(), in.readString(), in.readString(),
+                        DepartmentType.values()[in.readByte()]);
+                manager.setManagerId(id);
+                managers[i] = managerService.restoreManager(manager);
+            }
+
+            // Managers get their clients in one go: adding to their copy-on-write lists one by one is quadratic
+            List<List<Client>> clientsOfManager = new ArrayList<>();
+            for (Manager manager : managers) {
+                clientsOfManager.add(new ArrayList<>(manager.getClientList()));
+            }
+            Client[] clients = new Client[in.readInt()];
+            List<Client> liveClients = new ArrayList<>();
+            for (int i = 0; i < clients.length; i++) {
+                Client client = new Client(in.readId(), in.readString(), in.readString(), in.readString(), in.readString());
+                int manager = in.readInt();
+                if (in.readBoolean()) {
+                    clientService.restoreClient(client, null);
+                    if (manager != NONE) {
+                        clientsOfManager.get(manager).add(client);
+                    }
+                    liveClients.add(client);
+                }
+                clients[i] = client;
+            }
+            for (int i = 0; i < managers.length; i++) {
+                managers[i].setClientList(clientsOfManager.get(i));
+            }
+
+            Account[] accounts = new Account[in.readInt()];
+            boolean[] live = new boolean[accounts.length];
+            for (int i = 0; i < accounts.length; i++) {
+                String id = in.readId();
+                Client client = clients[in.readInt()];
+                AccountType type = AccountType.values()[in.readByte()];
+                accounts[i] = new Account(id, type, client, in.readLong());
+                live[i] = in.readBoolean();
+            }
+
+            TransactionStore store = transactionService.getStore();
+            int ordinals = in.readInt();
+            for (int ordinal = 0; ordinal < ordinals; ordinal++) {
+                store.ordinalOf(accounts[in.readInt()]);
+            }
+            // After the ordinals, since restoring posts each balance brought forward
+            for (int i = 0; i < accounts.length; i++) {
+                if (live[i]) {
+                    accountService.restoreAccount(accounts[i]);
+                }
+            }
+            int descriptions = in.readInt();
+            for (int code = 0; code < descriptions; code++) {
+                store.restoreDescription(in.readString());
+            }
+            int rows = in.readInt();
+            for (int row = 0; row < rows; row++) {
+                store.restoreRow(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readByte(),
+                        in.readInt(), in.readInt(), in.readInt());
+            }
+            // Keys whose transaction has since been deleted are dropped
+            for (int keys = version >= 2 ? in.readInt() : 0; keys > 0; keys--) {
+                String key = in.readString();
+                Transaction transaction = store.findById(in.readId());
+                if (transaction != null) {
+                    transactionService.restoreIdempotencyKey(key, transaction);
+                }
+            }
+            if (in.readLong() != MAGIC) {
+                throw new IllegalStateException("Truncated bank snapshot: " + path);
+            }
+            transactionService.restoreTotals(liveClients);
+            return journalSequence;
+        }
+    }
+
+    private static <T> Map<T, Integer> positionsOf(List<T> items) {
+        Map<T, Integer> positions = new IdentityHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            positions.put(items.get(i), i);
+        }
+        return positions;
+    }
+
+    private static void writeId(DataOutputStream out, String id) throws IOException {
+        UUID uuid = UUID.fromString(id);
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Sequential reader over a read-only file mapped in windows of up to 256 MB, remapped as the
+     * position crosses the end of the current one.
+     */
+    private static final class MappedInput {
+        private static final long WINDOW = 256L << 20;
+
+        private final FileChannel channel;
+        private final long length;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        MappedInput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.length = channel.size();
+            map(0L);
+        }
+
+        long readLong() throws IOException {
+            return ensure(8).getLong();
+        }
+
+        int readInt() throws IOException {
+            return ensure(4).getInt();
+        }
+
+        byte readByte() throws IOException {
+            return ensure(1).get();
+        }
+
+        boolean readBoolean() throws IOException {
+            return readByte() != 0;
+        }
+
+        String readId() throws IOException {
+            return new UUID(readLong(), readLong()).toString();
+        }
+
+        String readString() throws IOException {
+            int size = readInt();
+            byte[] bytes = new byte[size];
+            ensure(size).get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private ByteBuffer ensure(int bytes) throws IOException {
+            if (window.remaining() < bytes) {
+                long position = windowStart + window.position();
+                if (position + bytes > length) {
+                    throw new IllegalStateException("Truncated bank snapshot");
+                }
+                map(position);
+            }
+            return window;
+        }
+
+        private void map(long position) throws IOException {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, length - position));
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package services;
+
+import models.Transaction;
+import models.TransactionRequest;
+import models.enums.TransactionType;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Single-writer pipeline for deposits, withdrawals and transfers, in the style of a disruptor.
+ * Producers claim the next sequence number, copy their operation into that slot of a pre-allocated
+ * ring and publish it. One business-logic thread applies the slots strictly in sequence order,
+ * appending each journal record without waiting for it, so sequenced operations never contend for
+ * account locks. A downstream thread then waits once for the journal to make everything applied so
+ * far durable, notifies the callers of those slots and hands the slots back to producers.
+ */
+public class TransactionSequencer implements Closeable {
+    private static final int SPINS = 64; // yields before a waiting thread blocks
+    private static final long MAX_BLOCK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final TransactionService transactionService;
+    private final Journal journal;
+    private final Slot[] slots;
+    private final int mask;
+    private final Thread logicThread;
+    private final Thread notifierThread;
+
+    // Claims are serialized with close() so every claimed slot gets processed
+    private final ReentrantLock claimLock = new ReentrantLock();
+    private long claimed = -1L;          // guarded by claimLock
+    private boolean closed;              // guarded by claimLock
+    private volatile long applied = -1L;   // last sequence the business-logic thread finished
+    private volatile long completed = -1L; // last sequence whose caller was notified; producers wait on it
+    private volatile boolean running = true;
+
+    private final Signal publishedSignal = new Signal();
+    private final Signal appliedSignal = new Signal();
+    private final Signal completedSignal = new Signal();
+    // Created once so waiting allocates nothing
+    private final LongPredicate isPublished = this::isPublished;
+    private final LongPredicate isApplied = this::isApplied;
+    private final LongPredicate hasRoom = this::hasRoom;
+
+    public TransactionSequencer(TransactionService transactionService, Journal journal, int bufferSize) {
+        if (bufferSize <= 0 || (bufferSize & (bufferSize - 1)) != 0) {
+            throw new IllegalArgumentException("The buffer size must be a power of two");
+        }
+        this.transactionService = transactionService;
+        this.journal = journal;
+        this.slots = new Slot[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = bufferSize - 1;
+        this.logicThread = new Thread(this::runLogic, "sequencer-logic");
+        this.notifierThread = new Thread(this::runNotifier, "sequencer-notifier");
+        logicThread.setDaemon(true);
+        notifierThread.setDaemon(true);
+        logicThread.start();
+        notifierThread.start();
+    }
+
+    /**
+     * Queues an operation; the callback runs on the notifier thread once it is applied and durable,
+     * with either the transaction or the exception it failed with. Nothing is allocated per call.
+     */
+    public void submit(TransactionType type, String sourceAccountId, String destinationAccountId, double amount,
+                       String description, String idempotencyKey,
+                       BiConsumer<? super Transaction, ? super RuntimeException> callback) {
+        publish(type, sourceAccountId, destinationAccountId, amount, description, idempotencyKey, callback, null);
+    }
+
+    public CompletableFuture<Transaction> submit(TransactionRequest request) {
+        CompletableFuture<Transaction> future = new CompletableFuture<>();
+        publish(request.getTransactionType(), request.getSourceAccountId(), request.getDestinationAccountId(),
+                request.getAmount(), request.getDescription(), request.getIdempotencyKey(), null, future);
+        return future;
+    }
+
+    /**
+     * Submits the operation and waits for its outcome, rethrowing what it failed with.
+     */
+    public Transaction call(TransactionRequest request) {
+        if (Thread.currentThread() == logicThread || Thread.currentThread() == notifierThread) {
+            throw new IllegalStateException("The sequencer's own threads can't wait on it");
+        }
+        try {
+            return submit(request).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Sequence number of the last operation the business-logic thread applied
+    public long getAppliedSequence() {
+        return applied;
+    }
+
+    /**
+     * Stops taking operations, lets everything already submitted finish, and stops the threads.
+     */
+    @Override
+    public void close() {
+        long last;
+        claimLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            last = claimed;
+        } finally {
+            claimLock.unlock();
+        }
+        completedSignal.await(sequence -> completed >= sequence, last);
+        running = false;
+        publishedSignal.signal();
+        appliedSignal.signal();
+        try {
+            logicThread.join();
+            notifierThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void publish(TransactionType type, String sourceAccountId, String destinationAccountId, double amount,
+                         String description, String idempotencyKey, BiConsumer<? super Transaction, ? super RuntimeException> callback,
+                         CompletableFuture<Transaction> future) {
+        if (type == null) {
+            throw new IllegalArgumentException("A transaction type is required");
+        }
+        long sequence;
+        claimLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The sequencer is closed");
+            }
+            sequence = ++claimed;
+        } finally {
+            claimLock.unlock();
+        }
+        // Wait for the slot's previous occupant to be notified. The sequence is claimed, so the slot has to
+        // be filled: an interrupt can't end the wait, or the threads would stall on it for good.
+        completedSignal.awaitUninterruptibly(hasRoom, sequence);
+        Slot slot = slots[(int) sequence & mask];
+        slot.type = type;
+        slot.sourceAccountId = sourceAccountId;
+        slot.destinationAccountId = destinationAccountId;
+        slot.amount = amount;
+        slot.description = description;
+        slot.idempotencyKey = idempotencyKey;
+        slot.callback = callback;
+        slot.future = future;
+        slot.sequence = sequence; // volatile write publishes the fields above
+        publishedSignal.signal();
+    }
+
+    private void runLogic() {
+        for (long next = 0L; publishedSignal.await(isPublished, next); next++) {
+            Slot slot = slots[(int) next & mask];
+            try {
+                slot.transaction = apply(slot);
+            } catch (RuntimeException e) {
+                slot.error = e;
+            }
+            applied = next;
+            appliedSignal.signal();
+        }
+    }
+
+    private Transaction apply(Slot slot) {
+        switch (slot.type) {
+            case DEPOSIT:
+                return transactionService.deposit(slot.sourceAccountId, slot.amount, slot.description, slot.idempotencyKey, false);
+            case WITHDRAWAL:
+                return transactionService.withdraw(slot.sourceAccountId, slot.amount, slot.description, slot.idempotencyKey, false);
+            case TRANSFER:
+                return transactionService.transfer(slot.sourceAccountId, slot.destinationAccountId, slot.amount, slot.description,
+                        slot.idempotencyKey, false);
+            default:
+                throw new IllegalArgumentException("Unsupported transaction type: " + slot.type);
+        }
+    }
+
+    private void runNotifier() {
+        for (long next = 0L; appliedSignal.await(isApplied, next); ) {
+            long last = applied;
+            // Records of every slot up to last were appended before it was marked applied
+            RuntimeException failure = null;
+            try {
+                journal.awaitDurable(journal.getAppendedSequence());
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            for (long sequence = next; sequence <= last; sequence++) {
+                complete(slots[(int) sequence & mask], failure);
+            }
+            completed = last;
+            completedSignal.signal();
+            next = last + 1;
+        }
+    }
+
+    private boolean isPublished(long sequence) {
+        return slots[(int) sequence & mask].sequence == sequence;
+    }
+
+    private boolean isApplied(long sequence) {
+        return applied >= sequence;
+    }
+
+    private boolean hasRoom(long sequence) {
+        return sequence - slots.length <= completed;
+    }
+
+    private static void complete(Slot slot, RuntimeException failure) {
+        RuntimeException error = slot.error != null ? slot.error : failure;
+        Transaction transaction = error == null ? slot.transaction : null;
+        try {
+            if (slot.future != null) {
+                if (error != null) {
+                    slot.future.completeExceptionally(error);
+                } else {
+                    slot.future.complete(transaction);
+                }
+            } else if (slot.callback != null) {
+                slot.callback.accept(transaction, error);
+            }
+        } catch (RuntimeException e) {
+            // A failing callback must not stall the pipeline
+        }
+        slot.clear();
+    }
+
+    // One pre-allocated ring entry, reused every bufferSize sequence numbers
+    private static final class Slot {
+        volatile long sequence = -1L; // the sequence whose operation this slot holds, once published
+        TransactionType type;
+        String sourceAccountId;
+        String destinationAccountId;
+        double amount;
+        String description;
+        String idempotencyKey;
+        BiConsumer<? super Transaction, ? super RuntimeException> callback;
+        CompletableFuture<Transaction> future;
+        Transaction transaction;
+        RuntimeException error;
+
+        void clear() {
+            sourceAccountId = null;
+            destinationAccountId = null;
+            description = null;
+            idempotencyKey = null;
+            callback = null;
+            future = null;
+            transaction = null;
+            error = null;
+        }
+    }
+
+    /**
+     * Wait strategy: spin (yielding) for a while, then block until signalled. Signalling is a single
+     * volatile read unless someone is blocked.
+     */
+    private final class Signal {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private volatile int waiters;
+
+        // Waits until the condition holds for the sequence; false if the sequencer stopped first
+        boolean await(LongPredicate condition, long sequence) {
+            return await(condition, sequence, true);
+        }
+
+        // Like await, but an interrupt only sets the thread's interrupt flag again once the wait is over
+        boolean awaitUninterruptibly(LongPredicate condition, long sequence) {
+            return await(condition, sequence, false);
+        }
+
+        private boolean await(LongPredicate condition, long sequence, boolean interruptible) {
+            boolean interrupted = false;
+            try {
+                for (int spins = 0; !condition.test(sequence); spins++) {
+                    if (!running) {
+                        return false;
+                    }
+                    if (spins < SPINS) {
+                        Thread.yield();
+                        continue;
+                    }
+                    lock.lock();
+                    waiters++;
+                    try {
+                        if (!condition.test(sequence) && running) {
+                            changed.awaitNanos(MAX_BLOCK_NANOS);
+                        }
+                    } catch (InterruptedException e) {
+                        if (interruptible) {
+                            Thread.currentThread().interrupt();
+                            throw new IllegalStateException("Interrupted while waiting for the sequencer", e);
+                        }
+                        interrupted = true;
+                    } finally {
+                        waiters--;
+                        lock.unlock();
+                    }
+                }
+                return true;
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        void signal() {
+            if (waiters > 0) {
+                lock.lock();
+                try {
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
@@ -1,157 +1,974 @@
 package services;
 
 import models.Account;
+import models.Client;
 import models.Transaction;
+import models.TransactionPage;
+import models.TransactionRequest;
+import models.TransactionResult;
+import models.TransactionTotals;
+import models.TrialBalance;
+import models.enums.BatchMode;
 import models.enums.TransactionType;
+import utils.Clock;
+import utils.Money;
+import utils.TransactionPager;
 
-import java.math.BigDecimal;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class TransactionService {
-    private final List<Transaction> transactions;
+    private static final long SUSPICIOUS_AMOUNT_THRESHOLD = Money.fromAmount(10000.9);
+
+    private final TransactionStore store;
+    private final PostingLedger ledger;
     private final AccountService accountService;
+    private final Journal journal;
+    private final IdempotencyCache idempotencyCache;
+    private volatile TransactionSequencer sequencer;
+    private volatile TransactionShards shards;
 
 
     public TransactionService(AccountService accountService) {
-        this.transactions = new ArrayList<>();
+        this(accountService, Journal.disabled());
+    }
+
+    public TransactionService(AccountService accountService, Journal journal) {
+        this(accountService, journal, new IdempotencyCache(IdempotencyCache.DEFAULT_CAPACITY, IdempotencyCache.DEFAULT_TIME_TO_LIVE));
+    }
+
+    public TransactionService(AccountService accountService, Journal journal, IdempotencyCache idempotencyCache) {
+        if (idempotencyCache == null) {
+            throw new IllegalArgumentException("An idempotency cache is required");
+        }
+        this.store = new TransactionStore();
+        this.ledger = new PostingLedger(store);
         this.accountService = accountService;
+        accountService.attachLedger(ledger);
+        this.journal = journal;
+        this.idempotencyCache = idempotencyCache;
     }
 
     public Transaction MakeDeposit(String accountId, double amount, String description) {
+        return MakeDeposit(accountId, amount, description, null);
+    }
+
+    /**
+     * A deposit that is applied at most once per idempotency key: a retry with the same key returns
+     * the transaction the first attempt posted. The key is optional; null behaves like no key.
+     */
+    public Transaction MakeDeposit(String accountId, double amount, String description, String idempotencyKey) {
+        if (sequencer != null) {
+            return sequencer.call(TransactionRequest.deposit(accountId, amount, description).withIdempotencyKey(idempotencyKey));
+        }
+        if (shards != null) {
+            return shards.call(TransactionRequest.deposit(accountId, amount, description).withIdempotencyKey(idempotencyKey));
+        }
+        return deposit(accountId, amount, description, idempotencyKey, true);
+    }
+
+    public Transaction MakeWithdrawal(String accountId, double amount, String description) {
+        return MakeWithdrawal(accountId, amount, description, null);
+    }
+
+    public Transaction MakeWithdrawal(String accountId, double amount, String description, String idempotencyKey) {
+        if (sequencer != null) {
+            return sequencer.call(TransactionRequest.withdrawal(accountId, amount, description).withIdempotencyKey(idempotencyKey));
+        }
+        if (shards != null) {
+            return shards.call(TransactionRequest.withdrawal(accountId, amount, description).withIdempotencyKey(idempotencyKey));
+        }
+        return withdraw(accountId, amount, description, idempotencyKey, true);
+    }
 
-        if (validateAmount(amount)) {
+    public Transaction makeTransfer(String sourceAccountId, String destinationAccountId, double amount, String description) {
+        return makeTransfer(sourceAccountId, destinationAccountId, amount, description, null);
+    }
+
+    public Transaction makeTransfer(String sourceAccountId, String destinationAccountId, double amount, String description,
+                                    String idempotencyKey) {
+        if (sequencer != null) {
+            return sequencer.call(TransactionRequest.transfer(sourceAccountId, destinationAccountId, amount, description)
+                    .withIdempotencyKey(idempotencyKey));
+        }
+        if (shards != null) {
+            return shards.call(TransactionRequest.transfer(sourceAccountId, destinationAccountId, amount, description)
+                    .withIdempotencyKey(idempotencyKey));
+        }
+        return transfer(sourceAccountId, destinationAccountId, amount, description, idempotencyKey, true);
+    }
+
+    /**
+     * Routes deposits, withdrawals and transfers through a single-writer sequencer from now on.
+     * Callers still block for their result; {@link #getSequencer()} also takes asynchronous submissions.
+     */
+    public synchronized TransactionSequencer startSequencer(int bufferSize) {
+        if (sequencer != null || shards != null) {
+            throw new IllegalStateException("The sequencer or the shards are already running");
+        }
+        sequencer = new TransactionSequencer(this, journal, bufferSize);
+        return sequencer;
+    }
+
+    public TransactionSequencer getSequencer() {
+        return sequencer;
+    }
+
+    /**
+     * Routes deposits, withdrawals and transfers from now on to shards that each own a hash
+     * partition of the accounts and apply their operations on one thread.
+     */
+    public synchronized TransactionShards startShards(int shardCount) {
+        if (sequencer != null || shards != null) {
+            throw new IllegalStateException("The sequencer or the shards are already running");
+        }
+        shards = new TransactionShards(this, accountService, journal, shardCount);
+        return shards;
+    }
+
+    public TransactionShards getShards() {
+        return shards;
+    }
+
+    // The sequencer applies operations with awaitDurable = false and waits for the journal downstream.
+    // A retried key is checked under the account locks, so two attempts can't both get past it.
+    Transaction deposit(String accountId, double amount, String description, String idempotencyKey, boolean awaitDurable) {
+        long amountInCentimes = Money.fromAmount(amount);
+        if (validateAmount(amountInCentimes)) {
             throw new IllegalArgumentException("The minimum amount to deposit is 100 dh");
         }
 
         Account account = accountService.findAccountById(accountId);
 
-        Transaction transaction = new Transaction(TransactionType.DEPOSIT, amount, description, account);
-        account.deposit(amount);
-        account.addTransaction(transaction);
-        transactions.add(transaction);
+        Transaction transaction;
+        long sequence;
+        journal.beginChange();
+        account.getLock().lock();
+        try {
+            Transaction original = findOriginal(idempotencyKey, TransactionType.DEPOSIT, account, null, amountInCentimes);
+            if (original != null) {
+                transaction = original;
+                sequence = journal.getAppendedSequence(); // covers the original's record
+            } else {
+                ensureRegistered(account);
+                // Created under the lock so each account's history stays in date order
+                transaction = new Transaction(TransactionType.DEPOSIT, amountInCentimes, description, account);
+                Journal.Record record = recordPosted(transaction, idempotencyKey);
+                account.deposit(amountInCentimes);
+                store.append(transaction);
+                ledger.deposit(account, amountInCentimes);
+                post(transaction);
+                sequence = journalPosted(record, transaction, idempotencyKey);
+            }
+        } finally {
+            account.getLock().unlock();
+            journal.endChange();
+        }
+        expireIdempotencyKeys(idempotencyKey);
+        // Wait for the fsync outside the lock so other writers can join the same group commit
+        if (awaitDurable) {
+            journal.awaitDurable(sequence);
+        }
         return transaction;
     }
 
-    public Transaction MakeWithdrawal(String accountId, double amount, String description) {
+    Transaction withdraw(String accountId, double amount, String description, String idempotencyKey, boolean awaitDurable) {
+        long amountInCentimes = Money.fromAmount(amount);
         Account account = accountService.findAccountById(accountId);
-        if (!accountService.canWithdraw(account, amount)) {
-            throw new ArithmeticException("Insufficient balance for withdrawal");
+        Transaction transaction;
+        long sequence;
+        journal.beginChange();
+        account.getLock().lock();
+        try {
+            Transaction original = findOriginal(idempotencyKey, TransactionType.WITHDRAWAL, account, null, amountInCentimes);
+            if (original != null) {
+                transaction = original;
+                sequence = journal.getAppendedSequence();
+            } else {
+                if (!accountService.canWithdraw(account, amountInCentimes)) {
+                    throw new ArithmeticException("Insufficient balance for withdrawal");
+                }
+                transaction = new Transaction(TransactionType.WITHDRAWAL, amountInCentimes, description, account);
+                Journal.Record record = recordPosted(transaction, idempotencyKey);
+                account.withdraw(amountInCentimes);
+                store.append(transaction);
+                ledger.withdrawal(account, amountInCentimes);
+                post(transaction);
+                sequence = journalPosted(record, transaction, idempotencyKey);
+            }
+        } finally {
+            account.getLock().unlock();
+            journal.endChange();
+        }
+        expireIdempotencyKeys(idempotencyKey);
+        if (awaitDurable) {
+            journal.awaitDurable(sequence);
         }
-        Transaction transaction = new Transaction(TransactionType.WITHDRAWAL, amount, description, account);
-        account.setBalance(amount);
-        account.addTransaction(transaction);
-        transactions.add(transaction);
         return transaction;
     }
 
-    public Transaction makeTransfer(String sourceAccountId, String destinationAccountId, double amount, String description) {
+    Transaction transfer(String sourceAccountId, String destinationAccountId, double amount, String description,
+                         String idempotencyKey, boolean awaitDurable) {
+        long amountInCentimes = Money.fromAmount(amount);
         Account sourceAccount = accountService.findAccountById(sourceAccountId);
         Account destinationAccount = accountService.findAccountById(destinationAccountId);
 
-        if (!accountService.canWithdraw(sourceAccount, amount)) {
-            throw new ArithmeticException("Insufficient balance for withdrawal");
+        // Lock both accounts in account ID order so opposite transfers can't deadlock.
+        Account firstLock = sourceAccount.getAccountId().compareTo(destinationAccount.getAccountId()) <= 0 ? sourceAccount : destinationAccount;
+        Account secondLock = firstLock == sourceAccount ? destinationAccount : sourceAccount;
+
+        Transaction transaction;
+        long sequence;
+        journal.beginChange();
+        firstLock.getLock().lock();
+        try {
+            secondLock.getLock().lock();
+            try {
+                Transaction original = findOriginal(idempotencyKey, TransactionType.TRANSFER, sourceAccount, destinationAccount, amountInCentimes);
+                if (original != null) {
+                    transaction = original;
+                    sequence = journal.getAppendedSequence();
+                } else {
+                    if (!accountService.canWithdraw(sourceAccount, amountInCentimes)) {
+                        throw new ArithmeticException("Insufficient balance for withdrawal");
+                    }
+                    ensureRegistered(destinationAccount);
+
+                    transaction = new Transaction(TransactionType.TRANSFER, amountInCentimes, description, sourceAccount, destinationAccount);
+                    Journal.Record record = recordPosted(transaction, idempotencyKey);
+
+                    sourceAccount.withdraw(amountInCentimes);
+                    destinationAccount.deposit(amountInCentimes);
+                    store.append(transaction);
+                    ledger.transfer(sourceAccount, destinationAccount, amountInCentimes);
+
+                    post(transaction);
+                    sequence = journalPosted(record, transaction, idempotencyKey);
+                }
+            } finally {
+                secondLock.getLock().unlock();
+            }
+        } finally {
+            firstLock.getLock().unlock();
+            journal.endChange();
+        }
+        expireIdempotencyKeys(idempotencyKey);
+
+        if (awaitDurable) {
+            journal.awaitDurable(sequence);
+        }
+        return transaction;
+    }
+
+    // A transfer between two shards, in steps run by TransactionShards: the source's shard moves the
+    // amount to the in-transit account, the destination's shard credits and records it, or the source's
+    // shard takes it back. The source's shard holds the checkpoint gate from the first step until the
+    // transfer is settled, so no step here takes it; the transfer is journaled once, when credited.
+
+    // Returns the transaction already posted under the key, or null once the amount is in transit
+    Transaction debitTransfer(Account source, Account destination, long amountInCentimes, String idempotencyKey) {
+        source.getLock().lock();
+        try {
+            Transaction original = findOriginal(idempotencyKey, TransactionType.TRANSFER, source, destination, amountInCentimes);
+            if (original != null) {
+                return original;
+            }
+            if (!accountService.canWithdraw(source, amountInCentimes)) {
+                throw new ArithmeticException("Insufficient balance for withdrawal");
+            }
+            source.withdraw(amountInCentimes);
+            ledger.toTransit(source, amountInCentimes);
+            source.addDebitInFlight(1);
+            return null;
+        } finally {
+            source.getLock().unlock();
+        }
+    }
+
+    // Fails, leaving the amount in transit, if the destination was deleted since the debit. Both locks
+    // are taken, in account ID order, because the transaction is posted to both accounts' totals.
+    Transaction creditTransfer(Account source, Account destination, long amountInCentimes, String description,
+                               String idempotencyKey) {
+        Account firstLock = source.getAccountId().compareTo(destination.getAccountId()) <= 0 ? source : destination;
+        Account secondLock = firstLock == source ? destination : source;
+        firstLock.getLock().lock();
+        try {
+            secondLock.getLock().lock();
+            try {
+                ensureRegistered(destination);
+                Transaction transaction = new Transaction(TransactionType.TRANSFER, amountInCentimes, description, source, destination);
+                Journal.Record record = recordPosted(transaction, idempotencyKey);
+                destination.deposit(amountInCentimes);
+                ledger.fromTransit(destination, amountInCentimes);
+                store.append(transaction);
+                post(transaction);
+                journalPosted(record, transaction, idempotencyKey);
+                source.addDebitInFlight(-1);
+                return transaction;
+            } finally {
+                secondLock.getLock().unlock();
+            }
+        } finally {
+            firstLock.getLock().unlock();
+        }
+    }
+
+    // Compensation: the amount goes back to the source, and nothing is recorded or journaled. The
+    // source can't have been deleted meanwhile: deleteAccount refuses it while the debit is in flight.
+    void refundTransfer(Account source, long amountInCentimes) {
+        source.getLock().lock();
+        try {
+            source.addDebitInFlight(-1);
+            source.deposit(amountInCentimes);
+            ledger.fromTransit(source, amountInCentimes);
+        } finally {
+            source.getLock().unlock();
+        }
+    }
+
+    // Money paid in under the account's lock can't land on an account deleted since it was looked up
+    private void ensureRegistered(Account account) {
+        if (accountService.findAccountById(account.getAccountId()) != account) {
+            throw new NoSuchElementException("NO account found with ID: " + account.getAccountId());
+        }
+    }
+
+    /**
+     * The transaction already posted under this idempotency key, or null if there is none (or no key).
+     * A key reused for a different movement is rejected rather than silently answered.
+     */
+    private Transaction findOriginal(String idempotencyKey, TransactionType type, Account source, Account destination,
+                                     long amountInCentimes) {
+        if (idempotencyKey == null) {
+            return null;
+        }
+        Transaction original = idempotencyCache.find(idempotencyKey, Clock.nowMicros());
+        if (original != null && (original.getTransactionType() != type || original.getSourceAccount() != source
+                || original.getDestinationAccount() != destination || original.getAmountInCentimes() != amountInCentimes)) {
+            throw new IllegalArgumentException("The idempotency key " + idempotencyKey + " was already used for a different request");
+        }
+        return original;
+    }
+
+    // Run once the account locks are released, so lookups under them never pay for expiry
+    private void expireIdempotencyKeys(String idempotencyKey) {
+        if (idempotencyKey != null) {
+            idempotencyCache.purgeExpired(Clock.nowMicros());
+        }
+    }
+
+    // The transaction's record, with its idempotency key if it has one; encoded before anything moves
+    private Journal.Record recordPosted(Transaction transaction, String idempotencyKey) {
+        return idempotencyKey == null ? journal.transactionPosted(transaction) : journal.transactionPosted(transaction, idempotencyKey);
+    }
+
+    // Records the key (if any) with the transaction and appends the record covering them both
+    private long journalPosted(Journal.Record record, Transaction transaction, String idempotencyKey) {
+        if (idempotencyKey != null) {
+            idempotencyCache.record(idempotencyKey, transaction);
+        }
+        return journal.append(record);
+    }
+
+    /**
+     * Posts a batch of deposits, withdrawals and transfers, returning one result per request, in order.
+     * Accounts are resolved and each request validated up front, with no lock held; the accounts the
+     * batch touches are then locked together (in account ID order) while the items are applied in
+     * order. In ALL_OR_NOTHING mode every item is checked against the balances the earlier ones leave
+     * before anything is applied. The posted items are journaled as one record and waited on once.
+     */
+    public List<TransactionResult> submitBatch(List<TransactionRequest> requests, BatchMode mode) {
+        if (requests == null || mode == null) {
+            throw new IllegalArgumentException("A list of requests and a batch mode are required");
+        }
+        int size = requests.size();
+        List<String> accountIds = new ArrayList<>(size * 2);
+        for (TransactionRequest request : requests) {
+            if (request != null) {
+                accountIds.add(request.getSourceAccountId());
+                accountIds.add(request.getDestinationAccountId());
+            }
+        }
+        Map<String, Account> accounts = accountService.findAccountsById(accountIds);
+
+        Account[] sources = new Account[size];
+        Account[] destinations = new Account[size];
+        long[] amounts = new long[size];
+        String[] errors = new String[size];
+        Set<String> keys = new HashSet<>();
+        int firstError = -1;
+        for (int i = 0; i < size; i++) {
+            errors[i] = validate(requests.get(i), accounts, i, sources, destinations, amounts);
+            String key = errors[i] == null ? requests.get(i).getIdempotencyKey() : null;
+            if (key != null && !keys.add(key)) {
+                errors[i] = "The idempotency key " + key + " appears more than once in the batch";
+            }
+            if (errors[i] != null && firstError < 0) {
+                firstError = i;
+            }
         }
+        if (mode == BatchMode.ALL_OR_NOTHING && firstError >= 0) {
+            return rejectBatch(errors, firstError);
+        }
+
+        // Distinct accounts in ID order, the same order makeTransfer locks its two in
+        List<Account> locked = new ArrayList<>(new HashSet<>(accounts.values()));
+        locked.sort((a, b) -> a.getAccountId().compareTo(b.getAccountId()));
+
+        List<TransactionResult> results = new ArrayList<>(size);
+        List<Transaction> posted = new ArrayList<>(size);
+        List<String> postedKeys = new ArrayList<>(size);
+        Transaction[] originals = new Transaction[size];
+        long sequence = 0L;
+        journal.beginChange();
+        int held = 0;
+        try {
+            for (; held < locked.size(); held++) {
+                locked.get(held).getLock().lock();
+            }
+            // Retried items are answered with what they posted the first time, and not applied again
+            for (int i = 0; i < size; i++) {
+                if (errors[i] == null) {
+                    try {
+                        originals[i] = findOriginal(requests.get(i).getIdempotencyKey(), requests.get(i).getTransactionType(),
+                                sources[i], destinations[i], amounts[i]);
+                    } catch (IllegalArgumentException e) {
+                        errors[i] = e.getMessage();
+                        firstError = firstError < 0 ? i : firstError;
+                    }
+                }
+            }
+            if (mode == BatchMode.ALL_OR_NOTHING) {
+                if (firstError < 0) {
+                    firstError = checkBalances(requests, sources, destinations, amounts, originals, errors);
+                }
+                if (firstError >= 0) {
+                    return rejectBatch(errors, firstError);
+                }
+            }
+            // Every item is decided against running balances first, so the batch's record is encoded
+            // before anything moves
+            Map<Account, Long> balances = new IdentityHashMap<>();
+            for (int i = 0; i < size; i++) {
+                if (originals[i] != null) {
+                    results.add(TransactionResult.posted(originals[i]));
+                    continue;
+                }
+                TransactionRequest request = requests.get(i);
+                if (errors[i] == null && request.getTransactionType() != TransactionType.DEPOSIT
+                        && !accountService.canWithdraw(balances.getOrDefault(sources[i], sources[i].getBalanceInCentimes()), amounts[i])) {
+                    errors[i] = "Insufficient balance for withdrawal";
+                }
+                if (errors[i] != null) {
+                    results.add(TransactionResult.failed(errors[i]));
+                    continue;
+                }
+                long sourceBalance = balances.getOrDefault(sources[i], sources[i].getBalanceInCentimes());
+                balances.put(sources[i], request.getTransactionType() == TransactionType.DEPOSIT
+                        ? sourceBalance + amounts[i] : sourceBalance - amounts[i]);
+                if (destinations[i] != null) {
+                    balances.put(destinations[i], balances.getOrDefault(destinations[i], destinations[i].getBalanceInCentimes()) + amounts[i]);
+                }
+                Transaction transaction = new Transaction(request.getTransactionType(), amounts[i], request.getDescription(),
+                        sources[i], destinations[i]);
+                posted.add(transaction);
+                postedKeys.add(request.getIdempotencyKey());
+                results.add(TransactionResult.posted(transaction));
+            }
+            if (!posted.isEmpty()) {
+                Journal.Record record = journal.transactionsPosted(posted, postedKeys);
+                for (int i = 0; i < posted.size(); i++) {
+                    apply(posted.get(i));
+                    if (postedKeys.get(i) != null) {
+                        idempotencyCache.record(postedKeys.get(i), posted.get(i));
+                    }
+                }
+                sequence = journal.append(record);
+            } else {
+                sequence = journal.getAppendedSequence(); // any originals returned are covered by it
+            }
+        } finally {
+            for (int i = held - 1; i >= 0; i--) {
+                locked.get(i).getLock().unlock();
+            }
+            journal.endChange();
+        }
+        idempotencyCache.purgeExpired(Clock.nowMicros());
+        journal.awaitDurable(sequence);
+        return results;
+    }
+
+    // Checks one request against the resolved accounts, filling in its slot; returns the error, if any.
+    private String validate(TransactionRequest request, Map<String, Account> accounts, int index,
+                            Account[] sources, Account[] destinations, long[] amounts) {
+        if (request == null || request.getTransactionType() == null) {
+            return "Missing transaction request";
+        }
+        amounts[index] = Money.fromAmount(request.getAmount());
+        if (validateAmount(amounts[index])) {
+            return "The amount must be positive";
+        }
+        sources[index] = accounts.get(request.getSourceAccountId());
+        if (sources[index] == null) {
+            return "NO account found with ID: " + request.getSourceAccountId();
+        }
+        if (request.getTransactionType() == TransactionType.TRANSFER) {
+            destinations[index] = accounts.get(request.getDestinationAccountId());
+            if (destinations[index] == null) {
+                return "NO account found with ID: " + request.getDestinationAccountId();
+            }
+        }
+        return null;
+    }
 
-        Transaction transaction = new Transaction(TransactionType.TRANSFER, amount, description, sourceAccount, destinationAccount);
+    // Replays the batch against projected balances; returns the first item that would overdraw, or -1.
+    private int checkBalances(List<TransactionRequest> requests, Account[] sources, Account[] destinations,
+                              long[] amounts, Transaction[] originals, String[] errors) {
+        Map<Account, Long> balances = new IdentityHashMap<>();
+        for (int i = 0; i < sources.length; i++) {
+            if (originals[i] != null) {
+                continue;
+            }
+            Account source = sources[i];
+            long balance = balances.getOrDefault(source, source.getBalanceInCentimes());
+            if (requests.get(i).getTransactionType() == TransactionType.DEPOSIT) {
+                balances.put(source, balance + amounts[i]);
+                continue;
+            }
+            if (!accountService.canWithdraw(balance, amounts[i])) {
+                errors[i] = "Insufficient balance for withdrawal";
+                return i;
+            }
+            balances.put(source, balance - amounts[i]);
+            Account destination = destinations[i];
+            if (destination != null) {
+                balances.put(destination, balances.getOrDefault(destination, destination.getBalanceInCentimes()) + amounts[i]);
+            }
+        }
+        return -1;
+    }
 
-        sourceAccount.withdraw(amount);
-        sourceAccount.addTransaction(transaction);
+    private static List<TransactionResult> rejectBatch(String[] errors, int firstError) {
+        List<TransactionResult> results = new ArrayList<>(errors.length);
+        for (String error : errors) {
+            results.add(TransactionResult.failed(error != null ? error
+                    : "Batch rejected: item " + firstError + " failed: " + errors[firstError]));
+        }
+        return results;
+    }
 
-        destinationAccount.deposit(amount);
-        destinationAccount.addTransaction(transaction);
-        transactions.add(transaction);
+    // Applies one validated batch item; the caller holds the locks of every account involved.
+    private void apply(Transaction transaction) {
+        Account source = transaction.getSourceAccount();
+        Account destination = transaction.getDestinationAccount();
+        long amountInCentimes = transaction.getAmountInCentimes();
+        if (transaction.getTransactionType() == TransactionType.DEPOSIT) {
+            source.deposit(amountInCentimes);
+        } else {
+            source.withdraw(amountInCentimes);
+        }
+        if (destination != null) {
+            destination.deposit(amountInCentimes);
+        }
+        store.append(transaction);
+        postEntry(transaction);
+        post(transaction);
+    }
 
+    /**
+     * Re-applies a transaction replayed from the journal: same ID, timestamp and accounts, balances moved
+     * without the usual checks (they passed when it was first posted), and not journaled again.
+     */
+    public Transaction restoreTransaction(String transactionId, TransactionType type, long amountInCentimes, long timestamp,
+                                          String description, String sourceAccountId, String destinationAccountId) {
+        Account sourceAccount = accountService.findAccountById(sourceAccountId);
+        Account destinationAccount = destinationAccountId == null ? null : accountService.findAccountById(destinationAccountId);
+        Transaction transaction = new Transaction(transactionId, type, amountInCentimes, timestamp, description, sourceAccount, destinationAccount);
+        if (type == TransactionType.DEPOSIT) {
+            sourceAccount.deposit(amountInCentimes);
+        } else {
+            sourceAccount.withdraw(amountInCentimes);
+        }
+        if (destinationAccount != null) {
+            destinationAccount.deposit(amountInCentimes);
+        }
+        store.append(transaction);
+        postEntry(transaction);
+        post(transaction);
         return transaction;
     }
 
+    /**
+     * Recomputes every account's running totals from the ledger in one pass over its primitive columns
+     * (after a snapshot load), then each client's totals from its accounts.
+     */
+    public void restoreTotals(Iterable<Client> clients) {
+        boolean[] current = new boolean[store.accountCount()]; // by ordinal: still one of its client's accounts
+        for (Client client : clients) {
+            for (Account account : client.getAccounts()) {
+                current[store.ordinalOf(account)] = true;
+            }
+        }
+        store.forEachLiveRow(row -> {
+            TransactionType type = store.getType(row);
+            long amount = store.getAmount(row);
+            int source = store.getSourceOrdinal(row);
+            int destination = store.getDestinationOrdinal(row);
+            Account sourceAccount = store.accountAt(source);
+            sourceAccount.getTotals().record(type, amount);
+            if (destination != TransactionStore.NO_ACCOUNT && destination != source) {
+                Account destinationAccount = store.accountAt(destination);
+                destinationAccount.getTotals().record(type, amount);
+                if (current[source] && current[destination] && sourceAccount.getClient() == destinationAccount.getClient()) {
+                    sourceAccount.getClient().getSharedTransfers().record(type, amount);
+                }
+            }
+        });
+        for (Client client : clients) {
+            for (Account account : client.getAccounts()) {
+                client.getTotals().add(account.getTotals());
+            }
+        }
+    }
+
+    /**
+     * Re-records an idempotency key read back from the journal or a snapshot.
+     */
+    public void restoreIdempotencyKey(String idempotencyKey, Transaction transaction) {
+        idempotencyCache.record(idempotencyKey, transaction);
+    }
+
+    IdempotencyCache getIdempotencyCache() {
+        return idempotencyCache;
+    }
+
+    TransactionStore getStore() {
+        return store;
+    }
+
+    /**
+     * Re-adds every posting in the ledger, in parallel, and checks that each entry and the ledger as a
+     * whole sum to zero and that every account's postings add up to its balance.
+     */
+    public TrialBalance trialBalance() {
+        return ledger.trialBalance();
+    }
+
     public void updateTransaction(String transactionId, String newDescription) {
-        Transaction transaction = findTransactionById(transactionId);
-        transaction.setDescription(newDescription);
+        Account sourceAccount = findTransactionById(transactionId).getSourceAccount();
+        Journal.Record record = journal.transactionDescriptionUpdated(transactionId, newDescription);
+        long sequence;
+        // Under the source account's lock, which deleteTransaction also takes, so the journal sees them in order
+        journal.beginChange();
+        sourceAccount.getLock().lock();
+        try {
+            // Account histories are views over the store, so this one write covers them too
+            if (!store.updateDescription(transactionId, newDescription)) {
+                throw new NoSuchElementException("No Transaction Found with ID: " + transactionId);
+            }
+            sequence = journal.append(record);
+        } finally {
+            sourceAccount.getLock().unlock();
+            journal.endChange();
+        }
+        journal.awaitDurable(sequence);
     }
 
+    /**
+     * Removes the transaction from the ledger, and so from both accounts' histories, and takes it
+     * back out of their running totals. Balances, and the postings behind them, are left as they are.
+     */
     public void deleteTransaction(String transactionId) {
         Transaction transaction = findTransactionById(transactionId);
-        transactions.remove(transaction);
+        Account sourceAccount = transaction.getSourceAccount();
+        Account destinationAccount = transaction.getDestinationAccount() == null ? sourceAccount : transaction.getDestinationAccount();
+        Account firstLock = sourceAccount.getAccountId().compareTo(destinationAccount.getAccountId()) <= 0 ? sourceAccount : destinationAccount;
+        Account secondLock = firstLock == sourceAccount ? destinationAccount : sourceAccount;
+
+        Journal.Record record = journal.transactionDeleted(transactionId);
+        long sequence;
+        journal.beginChange();
+        firstLock.getLock().lock();
+        try {
+            secondLock.getLock().lock();
+            try {
+                if (!store.delete(transactionId)) {
+                    throw new NoSuchElementException("No Transaction Found with ID: " + transactionId);
+                }
+                unpost(transaction);
+                sequence = journal.append(record);
+            } finally {
+                secondLock.getLock().unlock();
+            }
+        } finally {
+            firstLock.getLock().unlock();
+            journal.endChange();
+        }
+        journal.awaitDurable(sequence);
     }
 
     public Transaction findTransactionById(String transactionId) {
-        return transactions
-                .stream()
-                .filter(transaction -> transaction.getTransactionId().equals(transactionId))
-                .findFirst()
-                .orElseThrow(() -> new NoSuchElementException("No Transaction Found with ID: " + transactionId));
+        Transaction transaction = transactionId == null ? null : store.findById(transactionId);
+        if (transaction == null) {
+            throw new NoSuchElementException("No Transaction Found with ID: " + transactionId);
+        }
+        return transaction;
     }
 
+    /**
+     * The account's transactions, either leg of a transfer, oldest first; read from its posting list in O(k).
+     */
     public List<Transaction> getTransactionsByAccount(String accountId) {
-        Account account = accountService.findAccountById(accountId);
-        return transactions
-                .stream()
-                .filter(transaction -> transaction.getSourceAccount().equals(account) || (transaction.getDestinationAccount() != null && transaction.getDestinationAccount().equals(account)))
-                .collect(Collectors.toList());
+        int ordinal = store.findOrdinal(accountService.findAccountById(accountId).getAccountId());
+        return store.selectByAccount(ordinal, Long.MIN_VALUE, Long.MAX_VALUE);
     }
 
     public List<Transaction> getTransactionsByType(TransactionType type) {
-        return transactions
-                .stream()
-                .filter(transaction -> transaction.getTransactionType().equals(type))
-                .collect(Collectors.toList());
+        return collectRows(row -> store.getType(row) == type);
+    }
+
+    /**
+     * Transactions stamped in [startMicros, endMicros) (epoch microseconds): start inclusive, end
+     * exclusive, oldest first. Every date-window query in the application uses these semantics.
+     */
+    public List<Transaction> getTransactionsByDateRange(long startMicros, long endMicros) {
+        return store.selectByTimeRange(startMicros, endMicros);
     }
 
-    public List<Transaction> getTransactionsByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
-        return transactions
-                .stream()
-                .filter(transaction -> !transaction.getDate().isBefore(startDate) && !transaction.getDate().isAfter(endDate))
-                .collect(Collectors.toList());
+    /**
+     * The account's transactions stamped in [startMicros, endMicros), oldest first.
+     */
+    public List<Transaction> getTransactionsByDateRange(String accountId, long startMicros, long endMicros) {
+        int ordinal = store.findOrdinal(accountService.findAccountById(accountId).getAccountId());
+        return store.selectByAccount(ordinal, startMicros, endMicros);
     }
 
     public List<Transaction> getTransactionsSortedByDate(boolean ascending) {
-        return transactions
-                .stream()
-                .sorted(ascending ? Comparator.comparing(Transaction::getDate) : Comparator.comparing(Transaction::getDate).reversed())
-                .collect(Collectors.toList());
+        // Rows are stamped in non-decreasing date order, so no sort is needed
+        return ascending ? collectRows(row -> true) : store.selectNewestFirst(row -> true);
+    }
+
+    /**
+     * Every transaction in the bank, newest first, each transfer once.
+     */
+    public List<Transaction> getTransactionsNewestFirst() {
+        return store.selectNewestFirst(row -> true);
+    }
+
+    /**
+     * One page of the whole ledger, newest first, read straight off the store's rows; see
+     * {@link TransactionPager} for the cursor.
+     */
+    public TransactionPage getTransactionsPage(String cursor, int pageSize) {
+        return TransactionPager.page((afterMicros, afterId, limit) ->
+                store.selectNewestFirst(afterMicros, afterId, limit).iterator(), cursor, pageSize);
+    }
+
+    public List<Transaction> getTransactionsNewestFirst(TransactionType type) {
+        return store.selectNewestFirst(row -> store.getType(row) == type);
+    }
+
+    /**
+     * Every transaction in the bank, lazily, in date order or newest first. Nothing is copied up
+     * front, so {@code limit} and {@code anyMatch} stop early, and the stream splits by row range
+     * when made parallel.
+     */
+    public Stream<Transaction> streamTransactions(boolean newestFirst) {
+        return StreamSupport.stream(store.spliterator(row -> true, newestFirst), false);
+    }
+
+    public Stream<Transaction> streamTransactions(TransactionType type, boolean newestFirst) {
+        return StreamSupport.stream(store.spliterator(row -> store.getType(row) == type, newestFirst), false);
+    }
+
+    // Amount strictly above the threshold, newest first
+    public List<Transaction> getTransactionsAboveNewestFirst(double amount) {
+        long threshold = Money.fromAmount(amount);
+        return store.selectNewestFirst(row -> store.getAmount(row) > threshold);
+    }
+
+    // Types with no transactions are left out
+    public Map<TransactionType, Long> countTransactionsByType() {
+        Map<TransactionType, Long> counts = new EnumMap<>(TransactionType.class);
+        for (TransactionType type : TransactionType.values()) {
+            long count = store.liveCount(type);
+            if (count > 0) {
+                counts.put(type, count);
+            }
+        }
+        return counts;
     }
 
     public List<Transaction> getTransactionsSortedByAmount(boolean ascending) {
-        return transactions
-                .stream()
-                .sorted(ascending ? Comparator.comparing(Transaction::getAmount) : Comparator.comparing(Transaction::getAmount).reversed())
-                .collect(Collectors.toList());
+        return store.selectByAmount(TransactionStore.NO_ACCOUNT, Long.MIN_VALUE, true, Long.MAX_VALUE, true, ascending);
+    }
+
+    /**
+     * Bank-wide transactions with an amount in [minAmount, maxAmount], in ascending amount order.
+     */
+    public List<Transaction> getTransactionsByAmountRange(double minAmount, double maxAmount) {
+        return store.selectByAmount(TransactionStore.NO_ACCOUNT, Money.fromAmount(minAmount), true, Money.fromAmount(maxAmount), true, true);
+    }
+
+    /**
+     * The account's transactions (either leg of a transfer) with an amount in [minAmount, maxAmount],
+     * in ascending amount order.
+     */
+    public List<Transaction> getTransactionsByAmountRange(String accountId, double minAmount, double maxAmount) {
+        int ordinal = store.findOrdinal(accountService.findAccountById(accountId).getAccountId());
+        if (ordinal == TransactionStore.NO_ACCOUNT) {
+            return new ArrayList<>();
+        }
+        return store.selectByAmount(ordinal, Money.fromAmount(minAmount), true, Money.fromAmount(maxAmount), true, true);
     }
 
     public double calculateTotalByType(TransactionType type) {
-        return transactions
-                .stream()
-                .filter(transaction -> transaction.getTransactionType().equals(type))
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        return Money.toAmount(store.sumAmounts(row -> store.getType(row) == type));
     }
 
     public List<Transaction> getSuspiciousTransactions() {
-        return transactions
-                .stream()
-                .filter(transaction -> transaction.getAmount() > 10000.9)
-                .collect(Collectors.toList());
+        return store.selectByAmount(TransactionStore.NO_ACCOUNT, SUSPICIOUS_AMOUNT_THRESHOLD, false, Long.MAX_VALUE, true, true);
     }
 
 
     public List<Transaction> getTransactionByGivenAmount(double amount){
-        return transactions
-                .stream()
-                .filter(transaction -> transaction.getAmount() <= amount)
-                .collect(Collectors.toList());
+        return store.selectByAmount(TransactionStore.NO_ACCOUNT, Long.MIN_VALUE, true, Money.fromAmount(amount), true, true);
     }
 
     public List<Transaction> getAllTransactions() {
-        return new ArrayList<>(transactions);
+        return collectRows(row -> true);
+    }
+
+    /**
+     * Recomputes every account and client aggregate from the ledger's per-account postings and
+     * replaces the running values. Returns how many accounts and clients had drifted.
+     */
+    public int rebuildAggregates() {
+        int mismatches = 0;
+        Set<Client> clients = new HashSet<>();
+        for (Account account : accountService.getAllAccounts()) {
+            account.getLock().lock();
+            try {
+                TransactionTotals recomputed = new TransactionTotals();
+                for (Transaction transaction : account.getTransactions()) {
+                    recomputed.record(transaction.getTransactionType(), transaction.getAmountInCentimes());
+                }
+                if (!recomputed.sameAs(account.getTotals())) {
+                    mismatches++;
+                    account.getTotals().reset();
+                    account.getTotals().add(recomputed);
+                }
+            } finally {
+                account.getLock().unlock();
+            }
+            clients.add(account.getClient());
+        }
+        for (Client client : clients) {
+            // Every balance and total change goes through an account's lock, so with all of the
+            // client's locks held (in account ID order, like transfers) nothing moves meanwhile
+            List<Account> accounts = new ArrayList<>(client.getAccounts());
+            accounts.sort(Comparator.comparing(Account::getAccountId));
+            for (Account account : accounts) {
+                account.getLock().lock();
+            }
+            try {
+                TransactionTotals recomputed = new TransactionTotals();
+                TransactionTotals sharedTransfers = new TransactionTotals();
+                long balance = 0L;
+                for (Account account : accounts) {
+                    recomputed.add(account.getTotals());
+                    balance += account.getBalanceInCentimes();
+                    // Each shared transfer once, from its source's side
+                    for (Transaction transaction : account.getTransactions()) {
+                        if (transaction.getSourceAccount() == account && client.isSharedTransfer(transaction)) {
+                            sharedTransfers.record(transaction.getTransactionType(), transaction.getAmountInCentimes());
+                        }
+                    }
+                }
+                if (!recomputed.sameAs(client.getTotals()) || !sharedTransfers.sameAs(client.getSharedTransfers())
+                        || balance != client.getBalanceInCentimes()) {
+                    mismatches++;
+                    client.correctAggregates(recomputed, sharedTransfers, balance);
+                }
+            } finally {
+                for (Account account : accounts) {
+                    account.getLock().unlock();
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    // Writes the transaction's debit and credit to the posting ledger; caller holds the accounts' locks.
+    private void postEntry(Transaction transaction) {
+        switch (transaction.getTransactionType()) {
+            case DEPOSIT:
+                ledger.deposit(transaction.getSourceAccount(), transaction.getAmountInCentimes());
+                break;
+            case WITHDRAWAL:
+                ledger.withdrawal(transaction.getSourceAccount(), transaction.getAmountInCentimes());
+                break;
+            default:
+                ledger.transfer(transaction.getSourceAccount(), transaction.getDestinationAccount(), transaction.getAmountInCentimes());
+        }
+    }
+
+    // Adds the appended transaction to the running totals of its accounts and their clients; caller holds
+    // the accounts' locks. A transfer between two accounts of one client is also noted as shared, so the
+    // client's figures count it once, as its history lists it.
+    private void post(Transaction transaction) {
+        TransactionType type = transaction.getTransactionType();
+        long amount = transaction.getAmountInCentimes();
+        Account source = transaction.getSourceAccount();
+        Account destination = transaction.getDestinationAccount();
+        source.getTotals().record(type, amount);
+        source.getClient().getTotals().record(type, amount);
+        if (destination != null && destination != source) {
+            destination.getTotals().record(type, amount);
+            destination.getClient().getTotals().record(type, amount);
+            if (source.getClient().isSharedTransfer(transaction)) {
+                source.getClient().getSharedTransfers().record(type, amount);
+            }
+        }
+    }
+
+    // Client figures are only taken back for accounts still the client's; a deleted one's left with it
+    private void unpost(Transaction transaction) {
+        TransactionType type = transaction.getTransactionType();
+        long amount = transaction.getAmountInCentimes();
+        Account source = transaction.getSourceAccount();
+        Account destination = transaction.getDestinationAccount();
+        source.getTotals().unrecord(type, amount);
+        if (source.getClient().getAccounts().contains(source)) {
+            source.getClient().getTotals().unrecord(type, amount);
+        }
+        if (destination != null && destination != source) {
+            destination.getTotals().unrecord(type, amount);
+            if (destination.getClient().getAccounts().contains(destination)) {
+                destination.getClient().getTotals().unrecord(type, amount);
+            }
+            if (source.getClient().isSharedTransfer(transaction)) {
+                source.getClient().getSharedTransfers().unrecord(type, amount);
+            }
+        }
+    }
+
+    // Filters on the primitive columns and materializes only the matching rows, in row (date) order.
+    private List<Transaction> collectRows(IntPredicate filter) {
+        return store.select(filter);
     }
 
-    private boolean validateAmount(double amount) {
+    private boolean validateAmount(long amount) {
         return amount <= 0;
     }
 }
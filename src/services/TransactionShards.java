@@ -0,0 +1,382 @@
+package services;
+
+import models.Account;
+import models.Transaction;
+import models.TransactionRequest;
+import models.enums.TransactionType;
+import utils.Money;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sharded execution of deposits, withdrawals and transfers. Accounts are hash-partitioned by ID
+ * over a fixed number of shards, and each shard applies the operations on its accounts, one at a
+ * time, on its own thread, so sharded operations rarely wait for each other's account locks and
+ * independent shards run in parallel.
+ * <p>
+ * A transfer within one shard runs like any other operation. A transfer between two shards is
+ * handed off: the source's shard debits the amount into transit, the destination's shard credits
+ * and records it (briefly taking the source's lock too, to post to its totals), and if that fails
+ * (the destination was deleted meanwhile) the source's shard refunds it. Hand-offs jump the queue of the shard they are sent to. The source's shard holds the
+ * journal's checkpoint gate until the transfer is settled, so a checkpoint never sees money in
+ * transit; while a checkpoint waits, shards start nothing new and keep running hand-offs, so the
+ * transfers in flight finish and the checkpoint gets in.
+ * <p>
+ * Futures complete on the shard threads once the operation is applied; {@link #call} also waits
+ * for it to be durable.
+ */
+public class TransactionShards implements Closeable {
+    private static final long GATE_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final TransactionService transactionService;
+    private final AccountService accountService;
+    private final Journal journal;
+    private final Shard[] shards;
+    // Keyed operations not yet settled; a retry with the same key waits for the first attempt
+    private final Map<String, Pending> pendingKeys = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean closed;
+
+    public TransactionShards(TransactionService transactionService, AccountService accountService, Journal journal, int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.transactionService = transactionService;
+        this.accountService = accountService;
+        this.journal = journal;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public int shardOf(String accountId) {
+        return Math.floorMod(accountId.hashCode(), shards.length);
+    }
+
+    public CompletableFuture<Transaction> submit(TransactionRequest request) {
+        if (request == null || request.getTransactionType() == null) {
+            throw new IllegalArgumentException("A transaction type is required");
+        }
+        if (request.getSourceAccountId() == null) {
+            throw new IllegalArgumentException("The account ID is required");
+        }
+        pending.incrementAndGet();
+        if (closed) {
+            settled();
+            throw new IllegalStateException("The shards are closed");
+        }
+        CompletableFuture<Transaction> future = new CompletableFuture<>();
+        String key = request.getIdempotencyKey();
+        if (key != null) {
+            Pending first = pendingKeys.putIfAbsent(key, new Pending(request, future));
+            if (first != null) {
+                settled();
+                return retry(first, request);
+            }
+        }
+        Shard shard = shards[shardOf(request.getSourceAccountId())];
+        if (request.getTransactionType() == TransactionType.TRANSFER && request.getDestinationAccountId() != null
+                && shardOf(request.getDestinationAccountId()) != shard.index) {
+            shard.enqueue(new Operation(request, future, () -> debit(shard, request, future)));
+        } else {
+            shard.enqueue(new Operation(request, future, () -> runLocal(request, future)));
+        }
+        return future;
+    }
+
+    /**
+     * Submits the operation and waits for it to be applied and durable, rethrowing what it failed with.
+     */
+    public Transaction call(TransactionRequest request) {
+        for (Shard shard : shards) {
+            if (Thread.currentThread() == shard.thread) {
+                throw new IllegalStateException("A shard thread can't wait on the shards");
+            }
+        }
+        Transaction transaction;
+        try {
+            transaction = submit(request).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        // Covers the operation's record, whichever shard appended it
+        journal.awaitDurable(journal.getAppendedSequence());
+        return transaction;
+    }
+
+    /**
+     * Stops taking operations, lets everything already submitted settle, and stops the shard threads.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        while (pending.get() > 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        for (Shard shard : shards) {
+            shard.stop();
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // A deposit, withdrawal or transfer within one shard, through the usual locking path
+    private void runLocal(TransactionRequest request, CompletableFuture<Transaction> future) {
+        Transaction transaction;
+        try {
+            switch (request.getTransactionType()) {
+                case DEPOSIT:
+                    transaction = transactionService.deposit(request.getSourceAccountId(), request.getAmount(),
+                            request.getDescription(), request.getIdempotencyKey(), false);
+                    break;
+                case WITHDRAWAL:
+                    transaction = transactionService.withdraw(request.getSourceAccountId(), request.getAmount(),
+                            request.getDescription(), request.getIdempotencyKey(), false);
+                    break;
+                default:
+                    transaction = transactionService.transfer(request.getSourceAccountId(), request.getDestinationAccountId(),
+                            request.getAmount(), request.getDescription(), request.getIdempotencyKey(), false);
+            }
+        } catch (RuntimeException e) {
+            fail(request, future, e);
+            return;
+        }
+        complete(request, future, transaction);
+    }
+
+    // First step of a transfer between shards, on the source's shard
+    private void debit(Shard source, TransactionRequest request, CompletableFuture<Transaction> future) {
+        Account sourceAccount;
+        Account destinationAccount;
+        long amount = Money.fromAmount(request.getAmount());
+        try {
+            journal.beginChange(); // a second hold: the shard already has the gate for this task
+        } catch (RuntimeException e) {
+            fail(request, future, e);
+            return;
+        }
+        try {
+            sourceAccount = accountService.findAccountById(request.getSourceAccountId());
+            destinationAccount = accountService.findAccountById(request.getDestinationAccountId());
+            Transaction original = transactionService.debitTransfer(sourceAccount, destinationAccount, amount, request.getIdempotencyKey());
+            if (original != null) {
+                journal.endChange();
+                complete(request, future, original);
+                return;
+            }
+        } catch (RuntimeException e) {
+            journal.endChange();
+            fail(request, future, e);
+            return;
+        }
+        // The gate stays held until the source's shard hears back
+        source.inFlight++;
+        shards[shardOf(destinationAccount.getAccountId())].handOff(() -> {
+            Transaction transaction;
+            try {
+                transaction = transactionService.creditTransfer(sourceAccount, destinationAccount, amount,
+                        request.getDescription(), request.getIdempotencyKey());
+            } catch (RuntimeException e) {
+                source.handOff(() -> {
+                    source.inFlight--;
+                    try {
+                        transactionService.refundTransfer(sourceAccount, amount);
+                    } finally {
+                        journal.endChange();
+                    }
+                    fail(request, future, e);
+                });
+                return;
+            }
+            source.handOff(() -> {
+                source.inFlight--;
+                journal.endChange();
+                complete(request, future, transaction);
+            });
+        });
+    }
+
+    private CompletableFuture<Transaction> retry(Pending first, TransactionRequest request) {
+        TransactionRequest original = first.request;
+        if (original.getTransactionType() != request.getTransactionType()
+                || !original.getSourceAccountId().equals(request.getSourceAccountId())
+                || !String.valueOf(original.getDestinationAccountId()).equals(String.valueOf(request.getDestinationAccountId()))
+                || Money.fromAmount(original.getAmount()) != Money.fromAmount(request.getAmount())) {
+            CompletableFuture<Transaction> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new IllegalArgumentException(
+                    "The idempotency key " + request.getIdempotencyKey() + " was already used for a different request"));
+            return rejected;
+        }
+        return first.future;
+    }
+
+    private void complete(TransactionRequest request, CompletableFuture<Transaction> future, Transaction transaction) {
+        settle(request);
+        future.complete(transaction);
+    }
+
+    private void fail(TransactionRequest request, CompletableFuture<Transaction> future, RuntimeException error) {
+        settle(request);
+        future.completeExceptionally(error);
+    }
+
+    // Once settled, a retry finds the key (if the operation posted) in the idempotency cache instead
+    private void settle(TransactionRequest request) {
+        if (request.getIdempotencyKey() != null) {
+            pendingKeys.remove(request.getIdempotencyKey());
+        }
+        settled();
+    }
+
+    private void settled() {
+        pending.decrementAndGet();
+    }
+
+    private static final class Pending {
+        final TransactionRequest request;
+        final CompletableFuture<Transaction> future;
+
+        Pending(TransactionRequest request, CompletableFuture<Transaction> future) {
+            this.request = request;
+            this.future = future;
+        }
+    }
+
+    private final class Shard {
+        private final int index;
+        private final LinkedBlockingDeque<Runnable> queue = new LinkedBlockingDeque<>();
+        private final Thread thread;
+        private volatile boolean running = true;
+        // Transfers debited here whose gate hold is still taken; only used on the shard thread
+        private int inFlight;
+
+        Shard(int index) {
+            this.index = index;
+            this.thread = new Thread(this::run, "shard-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void enqueue(Runnable task) {
+            queue.offerLast(task);
+        }
+
+        // Steps of a transfer already under way go first
+        void handOff(Runnable step) {
+            queue.offerFirst(new HandOff(step));
+        }
+
+        void stop() {
+            running = false;
+            queue.offerLast(() -> { });
+        }
+
+        // Takes the checkpoint gate, running hand-offs meanwhile so a waiting checkpoint can't stall a transfer.
+        // The gate is reentrant: while this shard holds it for transfers in flight it would be granted at once,
+        // and a stream of new transfers could keep the checkpoint out for good, so new work waits for those first.
+        void beginChange() {
+            while (inFlight > 0 && journal.isCheckpointWaiting()) {
+                if (!runHandOffs()) {
+                    LockSupport.parkNanos(GATE_POLL_NANOS);
+                }
+            }
+            while (!journal.tryBeginChange(GATE_POLL_NANOS)) {
+                runHandOffs();
+            }
+        }
+
+        private boolean runHandOffs() {
+            boolean ran = false;
+            for (Runnable next = queue.peekFirst(); next instanceof HandOff; next = queue.peekFirst()) {
+                queue.pollFirst().run();
+                ran = true;
+            }
+            return ran;
+        }
+
+        private void run() {
+            while (running || !queue.isEmpty()) {
+                Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    if (task instanceof Operation) {
+                        Operation operation = (Operation) task;
+                        try {
+                            beginChange();
+                        } catch (RuntimeException e) {
+                            // The journal is closed or has failed: refused before anything changed
+                            fail(operation.request, operation.future, e);
+                            continue;
+                        }
+                        try {
+                            task.run();
+                        } finally {
+                            journal.endChange();
+                        }
+                    } else {
+                        task.run();
+                    }
+                } catch (RuntimeException e) {
+                    // Operations report their own failures; nothing else may stop the shard
+                }
+            }
+        }
+    }
+
+    // A submitted operation, which runs under the checkpoint gate
+    private static final class Operation implements Runnable {
+        private final TransactionRequest request;
+        private final CompletableFuture<Transaction> future;
+        private final Runnable step;
+
+        Operation(TransactionRequest request, CompletableFuture<Transaction> future, Runnable step) {
+            this.request = request;
+            this.future = future;
+            this.step = step;
+        }
+
+        @Override
+        public void run() {
+            step.run();
+        }
+    }
+
+    private static final class HandOff implements Runnable {
+        private final Runnable step;
+
+        HandOff(Runnable step) {
+            this.step = step;
+        }
+
+        @Override
+        public void run() {
+            step.run();
+        }
+    }
+}
@@ -0,0 +1,1020 @@
+package services;
+
+import models.Account;
+import models.Transaction;
+import models.TransactionHistory;
+import models.enums.TransactionType;
+import utils.NewestFirstTransactionIterator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Spliterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Append-only columnar ledger behind TransactionService. Each transaction is a row spread over
+ * chunked primitive columns (timestamp, amount, type, source/destination account ordinal,
+ * dictionary-encoded description); {@link Transaction} objects are only materialized on the way out.
+ * Rows are appended under a short lock and published through the volatile row count. Timestamps
+ * are assigned at append time and never go backwards, so row order is also date order.
+ * <p>
+ * Transaction IDs are hash-indexed to their row. Deletes only flag the row (a tombstone); once
+ * enough rows are dead the columns are compacted and the index rebuilt. Compaction renumbers rows,
+ * so anything that reads rows by number ({@link #select}, the {@code get*} accessors inside a
+ * filter) runs under the read lock and never holds a row number across calls.
+ * <p>
+ * Amounts are also indexed in sorted order, bank-wide and per account, so amount ranges,
+ * thresholds and amount-ordered listings are index walks rather than scans and sorts.
+ * <p>
+ * Each account has a posting list: its rows (both legs of a transfer, once for a transfer to
+ * itself) in row order. Deleted rows stay in it, masked, until compaction drops them. It is the
+ * only per-account history; {@link Account#getTransactions()} and friends read it through the
+ * {@link TransactionHistory} view bound when the account first transacts.
+ */
+public class TransactionStore {
+    static final int NO_ACCOUNT = -1;
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final TransactionType[] TYPES = TransactionType.values();
+    private static final byte LIVE = 0;
+    private static final byte DELETED = 1;
+    private static final int MIN_DELETED_BEFORE_COMPACTION = 1024;
+    private static final int STREAM_BATCH = 1024;
+    private static final int MIN_STREAM_SPLIT = 4 * STREAM_BATCH;
+
+    private LongColumn idHigh = new LongColumn();
+    private LongColumn idLow = new LongColumn();
+    private LongColumn timestamps = new LongColumn(); // epoch microseconds
+    private LongColumn amounts = new LongColumn(); // centimes
+    private ByteColumn types = new ByteColumn();
+    private IntColumn sourceAccounts = new IntColumn();
+    private IntColumn destinationAccounts = new IntColumn();
+    private IntColumn descriptions = new IntColumn();
+    private ByteColumn flags = new ByteColumn();
+    private volatile IdIndex idIndex = new IdIndex(CHUNK_SIZE);
+    // amount -> rows with that amount, in row order; per account keyed by account ordinal
+    private ConcurrentSkipListMap<Long, IntList> amountIndex = new ConcurrentSkipListMap<>();
+    private Map<Integer, ConcurrentSkipListMap<Long, IntList>> accountAmountIndexes = new ConcurrentHashMap<>();
+    // account ordinal -> rows posted to that account, in row order
+    private Map<Integer, IntList> postings = new ConcurrentHashMap<>();
+
+    // Appended under their own monitors; read without locking, e.g. by materialize on parallel readers
+    private final Map<String, Integer> descriptionCodes = new ConcurrentHashMap<>();
+    private final AppendOnlyArray<String> descriptionDictionary = new AppendOnlyArray<>();
+    private final Map<String, Integer> accountOrdinals = new ConcurrentHashMap<>();
+    private final AppendOnlyArray<Account> accountsByOrdinal = new AppendOnlyArray<>();
+
+    private final Object appendLock = new Object();
+    // Readers of row numbers share this lock; compaction takes it exclusively
+    private final ReentrantReadWriteLock rowLock = new ReentrantReadWriteLock();
+    private volatile int size;
+    private volatile int compactions;
+    private int deletedCount;
+    private final long[] liveCountsByType = new long[TYPES.length];
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    /**
+     * Appends the transaction and stamps it with a timestamp no earlier than the previous row's.
+     * Callers hold the locks of the accounts involved, so per-account history follows row order too.
+     */
+    public int append(Transaction transaction) {
+        synchronized (appendLock) {
+            long timestamp = Math.max(transaction.getTimestamp(), lastTimestamp);
+            lastTimestamp = timestamp;
+            transaction.setTimestamp(timestamp);
+
+            int row = size;
+            UUID id = UUID.fromString(transaction.getTransactionId());
+            idHigh.set(row, id.getMostSignificantBits());
+            idLow.set(row, id.getLeastSignificantBits());
+            timestamps.set(row, timestamp);
+            amounts.set(row, transaction.getAmountInCentimes());
+            types.set(row, (byte) transaction.getTransactionType().ordinal());
+            sourceAccounts.set(row, ordinalOf(transaction.getSourceAccount()));
+            destinationAccounts.set(row, transaction.getDestinationAccount() == null ? NO_ACCOUNT : ordinalOf(transaction.getDestinationAccount()));
+            descriptions.set(row, encodeDescription(transaction.getDescription()));
+            flags.set(row, LIVE);
+            idIndex = idIndex.put(row, id.getMostSignificantBits(), id.getLeastSignificantBits(), this);
+            indexRow(row);
+            liveCountsByType[types.get(row)]++;
+            size = row + 1;
+            return row;
+        }
+    }
+
+    /**
+     * Materializes the live rows accepted by the filter, in row (date) order. The filter may read
+     * the row through the {@code get*} accessors.
+     */
+    public List<Transaction> select(IntPredicate filter) {
+        rowLock.readLock().lock();
+        try {
+            List<Transaction> result = new ArrayList<>();
+            int rows = size;
+            for (int row = 0; row < rows; row++) {
+                if (isLive(row) && filter.test(row)) {
+                    result.add(materialize(row));
+                }
+            }
+            return result;
+        } finally {
+            rowLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Materializes the live rows accepted by the filter, newest first. Rows are already in date
+     * order, so this walks them backwards instead of sorting.
+     */
+    public List<Transaction> selectNewestFirst(IntPredicate filter) {
+        rowLock.readLock().lock();
+        try {
+            List<Transaction> result = new ArrayList<>();
+            for (int row = size - 1; row >= 0; row--) {
+                if (isLive(row) && filter.test(row)) {
+                    result.add(materialize(row));
+                }
+            }
+            return result;
+        } finally {
+            rowLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lazily materializes the live rows accepted by the filter, in row order or newest first. Only
+     * rows appended before the call are visited, and the spliterator splits its row range in halves
+     * for parallel streams. It reads a batch of rows at a time under the read lock and never runs
+     * the caller's action under it; if the store is compacted meanwhile it fails fast with a
+     * {@link ConcurrentModificationException}.
+     */
+    public Spliterator<Transaction> spliterator(IntPredicate filter, boolean newestFirst) {
+        return new RowSpliterator(filter, newestFirst, 0, size, compactions);
+    }
+
+    /**
+     * Up to {@code limit} live rows, newest first by (timestamp, transaction ID), that come strictly after
+     * ({@code afterMicros}, {@code afterId}), or from the newest row when {@code afterId} is null. The
+     * start row is found by binary search and rows are walked backwards from there; the few rows that
+     * share a microsecond are ordered by ID, so the key holds even if its row was deleted or the store
+     * compacted since it was handed out.
+     */
+    public List<Transaction> selectNewestFirst(long afterMicros, String afterId, int limit) {
+        rowLock.readLock().lock();
+        try {
+            List<Transaction> result = new ArrayList<>(limit);
+            List<Transaction> sameMicros = new ArrayList<>();
+            int rows = size;
+            int row = afterId == null ? rows - 1 : lowerBound(afterMicros + 1, rows) - 1;
+            while (row >= 0 && result.size() < limit) {
+                long micros = timestamps.get(row);
+                for (; row >= 0 && timestamps.get(row) == micros; row--) {
+                    if (isLive(row) && (afterId == null || micros != afterMicros || getTransactionId(row).compareTo(afterId) < 0)) {
+                        sameMicros.add(materialize(row));
+                    }
+                }
+                sameMicros.sort(NewestFirstTransactionIterator.NEWEST_FIRST);
+                result.addAll(sameMicros.subList(0, Math.min(sameMicros.size(), limit - result.size())));
+                sameMicros.clear();
+            }
+            return result;
+        } finally {
+            rowLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Live rows stamped in [fromMicros, toMicros), oldest first. The timestamp column is
+     * non-decreasing, so the window is found by binary search: O(log n + k).
+     */
+    public List<Transaction> selectByTimeRange(long fromMicros, long toMicros) {
+        rowLock.readLock().lock();
+        try {
+            List<Transaction> result = new ArrayList<>();
+            int rows = size;
+            for (int row = lowerBound(fromMicros, rows); row < rows && timestamps.get(row) < toMicros; row++) {
+                if (isLive(row)) {
+                    result.add(materialize(row));
+                }
+            }
+            return result;
+        } finally {
+            rowLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Live rows posted to the account (either leg) and stamped in [fromMicros, toMicros), oldest
+     * first: a binary search on the account's posting list, then O(k).
+     */
+    public List<Transaction> selectByAccount(int accountOrdinal, long fromMicros, long toMicros) {
+        rowLock.readLock().lock();
+        try {
+            List<Transaction> result = new ArrayList<>();
+            IntList rows = postings.get(accountOrdinal);
+            if (rows == null) {
+                return result;
+            }
+            int count = rows.size();
+            for (int i = lowerBound(rows, count, fromMicros); i < count && timestamps.get(rows.get(i)) < toMicros; i++) {
+                if (isLive(rows.get(i))) {
+                    result.add(materialize(rows.get(i)));
+                }
+            }
+            return result;
+        } finally {
+            rowLock.readLock().unlock();
+        }
+    }
+
+    // Visits every live row in row order under the read lock; the consumer reads it through the get* accessors.
+    public void forEachLiveRow(IntConsumer consumer) {
+        rowLock.readLock().lock();
+        try {
+            int rows = size;
+            for (int row = 0; row < rows; row++) {
+                if (isLive(row)) {
+                    consumer.accept(row);
+                }
+            }
+        } finally {
+            rowLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visits the live rows in [from, to) under the read lock, for work split by row range across
+     * threads; fails with a {@link ConcurrentModificationException} if the store was compacted
+     * since {@link #compactionCount()} returned {@code compactionsSeen}.
+     */
+    void forEachLiveRow(int from, int to, int compactionsSeen, IntConsumer consumer) {
+        rowLock.readLock().lock();
+        try {
+            checkNotCompacted(compactionsSeen);
+            for (int row = from; row < to; row++) {
+                if (isLive(row)) {
+                    consumer.accept(row);
+                }
+            }
+        } finally {
+            rowLock.readLock().unlock();
+        }
+    }
+
+    int compactionCount() {
+        return compactions;
+    }
+
+    // Only from inside forEachLiveRow, which holds the read lock
+    Transaction transactionAt(int row) {
+        return materialize(row);
+    }
+
+    public long sumAmounts(IntPredicate filter) {
+        rowLock.readLock().lock();
+        try {
+            long total = 0L;
+            int rows = size;
+            for (int row = 0; row < rows; row++) {
+                if (isLive(row) && filter.test(row)) {
+                    total += amounts.get(row);
+                }
+            }
+            return total;
+        } finally {
+            rowLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Live rows with an amount between the bounds, ordered by amount (ties in date order), walked
+     * from the sorted amount index. Pass {@link #NO_ACCOUNT} for the whole ledger or an account
+     * ordinal for that account's rows only.
+     */
+    public List<Transaction> selectByAmount(int accountOrdinal, long min, boolean minInclusive,
+                                            long max, boolean maxInclusive, boolean ascending) {
+        rowLock.readLock().lock();
+        try {
+            List<Transaction> result = new ArrayList<>();
+            NavigableMap<Long, IntList> index = accountOrdinal == NO_ACCOUNT ? amountIndex : accountAmountIndexes.get(accountOrdinal);
+            if (index == null || min > max) {
+                return result;
+            }
+            NavigableMap<Long, IntList> range = index.subMap(min, minInclusive, max, maxInclusive);
+            for (IntList rows : (ascending ? range : range.descendingMap()).values()) {
+                int count = rows.size();
+                for (int i = 0; i < count; i++) {
+                    int row = rows.get(i);
+                    if (isLive(row)) {
+                        result.add(materialize(row));
+                    }
+                }
+            }
+            return result;
+        } finally {
+            rowLock.readLock().unlock();
+        }
+    }
+
+    public Transaction findById(String transactionId) {
+        rowLock.readLock().lock();
+        try {
+            int row = findRow(transactionId);
+            return row < 0 ? null : materialize(row);
+        } finally {
+            rowLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the description of a live transaction. Returns false if the ID is unknown or deleted.
+     */
+    public boolean updateDescription(String transactionId, String description) {
+        rowLock.readLock().lock();
+        try {
+            int row = findRow(transactionId);
+            if (row < 0) {
+                return false;
+            }
+            descriptions.set(row, encodeDescription(description));
+            return true;
+        } finally {
+            rowLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tombstones a live transaction and compacts the store once enough rows are dead.
+     * Returns false if the ID is unknown or already deleted.
+     */
+    public boolean delete(String transactionId) {
+        boolean compactionDue;
+        rowLock.readLock().lock();
+        try {
+            synchronized (appendLock) {
+                int row = findRow(transactionId);
+                if (row < 0) {
+                    return false;
+                }
+                flags.set(row, DELETED);
+                deletedCount++;
+                liveCountsByType[types.get(row)]--;
+                compactionDue = deletedCount >= MIN_DELETED_BEFORE_COMPACTION && deletedCount >= size / 4;
+            }
+        } finally {
+            rowLock.readLock().unlock();
+        }
+        if (compactionDue) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Rewrites the columns without tombstoned rows and rebuilds the ID index.
+     */
+    public void compact() {
+        rowLock.writeLock().lock();
+        try {
+            synchronized (appendLock) {
+                if (deletedCount == 0) {
+                    return;
+                }
+                LongColumn newIdHigh = new LongColumn();
+                LongColumn newIdLow = new LongColumn();
+                LongColumn newTimestamps = new LongColumn();
+                LongColumn newAmounts = new LongColumn();
+                ByteColumn newTypes = new ByteColumn();
+                IntColumn newSourceAccounts = new IntColumn();
+                IntColumn newDestinationAccounts = new IntColumn();
+                IntColumn newDescriptions = new IntColumn();
+                ByteColumn newFlags = new ByteColumn();
+                int live = 0;
+                for (int row = 0; row < size; row++) {
+                    if (!isLive(row)) {
+                        continue;
+                    }
+                    newIdHigh.set(live, idHigh.get(row));
+                    newIdLow.set(live, idLow.get(row));
+                    newTimestamps.set(live, timestamps.get(row));
+                    newAmounts.set(live, amounts.get(row));
+                    newTypes.set(live, types.get(row));
+                    newSourceAccounts.set(live, sourceAccounts.get(row));
+                    newDestinationAccounts.set(live, destinationAccounts.get(row));
+                    newDescriptions.set(live, descriptions.get(row));
+                    newFlags.set(live, LIVE);
+                    live++;
+                }
+                idHigh = newIdHigh;
+                idLow = newIdLow;
+                timestamps = newTimestamps;
+                amounts = newAmounts;
+                types = newTypes;
+                sourceAccounts = newSourceAccounts;
+                destinationAccounts = newDestinationAccounts;
+                descriptions = newDescriptions;
+                flags = newFlags;
+                size = live;
+                deletedCount = 0;
+                compactions++;
+
+                IdIndex rebuilt = new IdIndex(Math.max(CHUNK_SIZE, live * 2));
+                for (int row = 0; row < live; row++) {
+                    rebuilt = rebuilt.put(row, idHigh.get(row), idLow.get(row), this);
+                }
+                idIndex = rebuilt;
+
+                amountIndex = new ConcurrentSkipListMap<>();
+                accountAmountIndexes = new ConcurrentHashMap<>();
+                postings = new ConcurrentHashMap<>();
+                for (int row = 0; row < live; row++) {
+                    indexRow(row);
+                }
+            }
+        } finally {
+            rowLock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int liveCount() {
+        synchronized (appendLock) {
+            return size - deletedCount;
+        }
+    }
+
+    // Kept up to date on every append and delete, so it is O(1)
+    public long liveCount(TransactionType type) {
+        synchronized (appendLock) {
+            return liveCountsByType[type.ordinal()];
+        }
+    }
+
+    public boolean isLive(int row) {
+        return flags.get(row) == LIVE;
+    }
+
+    public long getTimestamp(int row) {
+        return timestamps.get(row);
+    }
+
+    public long getAmount(int row) {
+        return amounts.get(row);
+    }
+
+    public TransactionType getType(int row) {
+        return TYPES[types.get(row)];
+    }
+
+    public int getSourceOrdinal(int row) {
+        return sourceAccounts.get(row);
+    }
+
+    public int getDestinationOrdinal(int row) {
+        return destinationAccounts.get(row);
+    }
+
+    public String getTransactionId(int row) {
+        return new UUID(idHigh.get(row), idLow.get(row)).toString();
+    }
+
+    long getIdHigh(int row) {
+        return idHigh.get(row);
+    }
+
+    long getIdLow(int row) {
+        return idLow.get(row);
+    }
+
+    int getDescriptionCode(int row) {
+        return descriptions.get(row);
+    }
+
+    int descriptionCount() {
+        return descriptionDictionary.size();
+    }
+
+    String descriptionAt(int code) {
+        return decodeDescription(code);
+    }
+
+    int accountCount() {
+        return accountsByOrdinal.size();
+    }
+
+    // Every account registered so far, indexed by ordinal
+    Account[] accountsByOrdinal() {
+        Account[] accounts = new Account[accountsByOrdinal.size()];
+        for (int ordinal = 0; ordinal < accounts.length; ordinal++) {
+            accounts[ordinal] = accountsByOrdinal.get(ordinal);
+        }
+        return accounts;
+    }
+
+    /**
+     * Appends a row read back from a snapshot, already encoded. Accounts and descriptions must have
+     * been registered first, in ordinal and code order, through {@link #ordinalOf} and
+     * {@link #restoreDescription}.
+     */
+    void restoreRow(long high, long low, long timestamp, long amount, byte type, int source, int destination, int description) {
+        synchronized (appendLock) {
+            int row = size;
+            lastTimestamp = Math.max(lastTimestamp, timestamp);
+            idHigh.set(row, high);
+            idLow.set(row, low);
+            timestamps.set(row, timestamp);
+            amounts.set(row, amount);
+            types.set(row, type);
+            sourceAccounts.set(row, source);
+            destinationAccounts.set(row, destination);
+            descriptions.set(row, description);
+            flags.set(row, LIVE);
+            idIndex = idIndex.put(row, high, low, this);
+            indexRow(row);
+            liveCountsByType[type]++;
+            size = row + 1;
+        }
+    }
+
+    int restoreDescription(String description) {
+        return encodeDescription(description);
+    }
+
+    // Adds the row to the amount indexes and to the posting list of each account it touches.
+    private void indexRow(int row) {
+        long amount = amounts.get(row);
+        amountIndex.computeIfAbsent(amount, key -> new IntList()).add(row);
+        int source = sourceAccounts.get(row);
+        int destination = destinationAccounts.get(row);
+        accountAmountIndexes.computeIfAbsent(source, key -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(amount, key -> new IntList()).add(row);
+        postings.computeIfAbsent(source, key -> new IntList()).add(row);
+        if (destination != NO_ACCOUNT && destination != source) {
+            accountAmountIndexes.computeIfAbsent(destination, key -> new ConcurrentSkipListMap<>())
+                    .computeIfAbsent(amount, key -> new IntList()).add(row);
+            postings.computeIfAbsent(destination, key -> new IntList()).add(row);
+        }
+    }
+
+    // First position in the posting list whose row is stamped at or after the given time.
+    private int lowerBound(IntList rows, int count, long micros) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps.get(rows.get(mid)) < micros) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First row stamped at or after the given time, among the first {@code rows} rows.
+    private int lowerBound(long micros, int rows) {
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps.get(mid) < micros) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int findRow(String transactionId) {
+        UUID id;
+        try {
+            id = UUID.fromString(transactionId);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        int row = idIndex.get(id.getMostSignificantBits(), id.getLeastSignificantBits(), this);
+        return row >= 0 && isLive(row) ? row : -1;
+    }
+
+    public int ordinalOf(Account account) {
+        Integer ordinal = accountOrdinals.get(account.getAccountId());
+        if (ordinal != null) {
+            return ordinal;
+        }
+        synchronized (accountsByOrdinal) {
+            return accountOrdinals.computeIfAbsent(account.getAccountId(), id -> {
+                int assigned = accountsByOrdinal.add(account);
+                account.setHistory(new AccountHistory(assigned));
+                return assigned;
+            });
+        }
+    }
+
+    /**
+     * Ordinal of an account already present in the ledger, or -1 if it never transacted.
+     */
+    public int findOrdinal(String accountId) {
+        Integer ordinal = accountOrdinals.get(accountId);
+        return ordinal == null ? NO_ACCOUNT : ordinal;
+    }
+
+    public Account accountAt(int ordinal) {
+        return accountsByOrdinal.get(ordinal);
+    }
+
+    private void checkNotCompacted(int compactionsSeen) {
+        if (compactions != compactionsSeen) {
+            throw new ConcurrentModificationException("The ledger was compacted while it was being read");
+        }
+    }
+
+    private Transaction materialize(int row) {
+        int destination = destinationAccounts.get(row);
+        return new Transaction(
+                getTransactionId(row),
+                getType(row),
+                amounts.get(row),
+                timestamps.get(row),
+                decodeDescription(descriptions.get(row)),
+                accountAt(sourceAccounts.get(row)),
+                destination == NO_ACCOUNT ? null : accountAt(destination));
+    }
+
+    private int encodeDescription(String description) {
+        String key = description == null ? "" : description;
+        Integer code = descriptionCodes.get(key);
+        if (code != null) {
+            return code;
+        }
+        synchronized (descriptionDictionary) {
+            return descriptionCodes.computeIfAbsent(key, descriptionDictionary::add);
+        }
+    }
+
+    private String decodeDescription(int code) {
+        return descriptionDictionary.get(code);
+    }
+
+    // Lazy row walk behind spliterator(); see there for locking and compaction
+    private final class RowSpliterator implements Spliterator<Transaction> {
+        private final IntPredicate filter;
+        private final boolean newestFirst;
+        private final int compactionsSeen;
+        private int from; // the row range still to visit, [from, to)
+        private int to;
+
+        RowSpliterator(IntPredicate filter, boolean newestFirst, int from, int to, int compactionsSeen) {
+            this.filter = filter;
+            this.newestFirst = newestFirst;
+            this.from = from;
+            this.to = to;
+            this.compactionsSeen = compactionsSeen;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Transaction> action) {
+            Transaction next = null;
+            rowLock.readLock().lock();
+            try {
+                checkNotCompacted();
+                while (next == null && from < to) {
+                    int row = newestFirst ? --to : from++;
+                    if (isLive(row) && filter.test(row)) {
+                        next = materialize(row);
+                    }
+                }
+            } finally {
+                rowLock.readLock().unlock();
+            }
+            if (next == null) {
+                return false;
+            }
+            action.accept(next);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Transaction> action) {
+            List<Transaction> batch = new ArrayList<>();
+            while (from < to) {
+                rowLock.readLock().lock();
+                try {
+                    checkNotCompacted();
+                    for (int rows = 0; rows < STREAM_BATCH && from < to; rows++) {
+                        int row = newestFirst ? --to : from++;
+                        if (isLive(row) && filter.test(row)) {
+                            batch.add(materialize(row));
+                        }
+                    }
+                } finally {
+                    rowLock.readLock().unlock();
+                }
+                batch.forEach(action);
+                batch.clear();
+            }
+        }
+
+        // The half that comes first in encounter order goes to the new spliterator
+        @Override
+        public Spliterator<Transaction> trySplit() {
+            if (to - from < MIN_STREAM_SPLIT) {
+                return null;
+            }
+            int mid = (from + to) >>> 1;
+            RowSpliterator prefix;
+            if (newestFirst) {
+                prefix = new RowSpliterator(filter, true, mid, to, compactionsSeen);
+                to = mid;
+            } else {
+                prefix = new RowSpliterator(filter, false, from, mid, compactionsSeen);
+                from = mid;
+            }
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+
+        private void checkNotCompacted() {
+            TransactionStore.this.checkNotCompacted(compactionsSeen);
+        }
+    }
+
+    /**
+     * Open-addressing hash from transaction ID to row. Slots hold row + 1 (0 is empty); the ID
+     * itself is compared against the ID columns, so the table is a single int[].
+     */
+    private static final class IdIndex {
+        private final int[] slots;
+        private final int mask;
+        private int used;
+
+        IdIndex(int minimumCapacity) {
+            int capacity = Integer.highestOneBit(Math.max(16, minimumCapacity - 1)) << 1;
+            this.slots = new int[capacity];
+            this.mask = capacity - 1;
+        }
+
+        // Returns the index to publish: this one, or a resized copy once it is half full.
+        IdIndex put(int row, long high, long low, TransactionStore store) {
+            IdIndex target = this;
+            if ((used + 1) * 2 > slots.length) {
+                target = new IdIndex(slots.length * 2);
+                for (int slot : slots) {
+                    if (slot != 0) {
+                        int existing = slot - 1;
+                        target.insert(existing, store.idHigh.get(existing), store.idLow.get(existing));
+                    }
+                }
+            }
+            target.insert(row, high, low);
+            return target;
+        }
+
+        int get(long high, long low, TransactionStore store) {
+            for (int i = hash(high, low) & mask; ; i = (i + 1) & mask) {
+                int slot = slots[i];
+                if (slot == 0) {
+                    return -1;
+                }
+                int row = slot - 1;
+                if (store.idHigh.get(row) == high && store.idLow.get(row) == low) {
+                    return row;
+                }
+            }
+        }
+
+        private void insert(int row, long high, long low) {
+            int i = hash(high, low) & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = row + 1;
+            used++;
+        }
+
+        private static int hash(long high, long low) {
+            long mixed = (high ^ low) * 0x9E3779B97F4A7C15L;
+            return (int) (mixed ^ (mixed >>> 32));
+        }
+    }
+
+    /**
+     * {@link TransactionHistory} over one account's posting list. Every call reads under the row
+     * lock, so positions stay valid for its duration even if a compaction is pending.
+     */
+    private final class AccountHistory implements TransactionHistory {
+        private final int ordinal;
+
+        private AccountHistory(int ordinal) {
+            this.ordinal = ordinal;
+        }
+
+        @Override
+        public int size() {
+            IntList rows = postings.get(ordinal);
+            return rows == null ? 0 : rows.size();
+        }
+
+        @Override
+        public Transaction get(int index) {
+            rowLock.readLock().lock();
+            try {
+                IntList rows = postings.get(ordinal);
+                if (rows == null || index < 0 || index >= rows.size() || !isLive(rows.get(index))) {
+                    return null;
+                }
+                return materialize(rows.get(index));
+            } finally {
+                rowLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public int lowerBound(long timestamp) {
+            rowLock.readLock().lock();
+            try {
+                IntList rows = postings.get(ordinal);
+                return rows == null ? 0 : TransactionStore.this.lowerBound(rows, rows.size(), timestamp);
+            } finally {
+                rowLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public List<Transaction> subList(int fromIndex, int toIndex) {
+            rowLock.readLock().lock();
+            try {
+                List<Transaction> result = new ArrayList<>();
+                IntList rows = postings.get(ordinal);
+                int end = rows == null ? 0 : Math.min(toIndex, rows.size());
+                for (int i = Math.max(0, fromIndex); i < end; i++) {
+                    if (isLive(rows.get(i))) {
+                        result.add(materialize(rows.get(i)));
+                    }
+                }
+                return result;
+            } finally {
+                rowLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Growable int array appended under the append lock and read concurrently: the array is
+     * published before the size, so a reader never sees a size larger than the array it reads.
+     */
+    private static final class IntList {
+        private volatile int[] values = new int[4];
+        private volatile int size;
+
+        void add(int value) {
+            int[] current = values;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[size] = value;
+            values = current;
+            size = size + 1;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+    }
+
+    /**
+     * Append-only array of values, appended by one writer at a time and read without locking: a
+     * value is stored before the size that covers it is published, and chunks are never moved.
+     */
+    static final class AppendOnlyArray<T> {
+        private static final int BITS = 10;
+        private static final int MASK = (1 << BITS) - 1;
+
+        private volatile Object[][] chunks = new Object[0][];
+        private volatile int size;
+
+        // Returns the value's index; callers serialize appends
+        int add(T value) {
+            int index = size;
+            int chunk = index >>> BITS;
+            Object[][] current = chunks;
+            if (chunk == current.length) {
+                current = Arrays.copyOf(current, chunk + 1);
+                current[chunk] = new Object[1 << BITS];
+                chunks = current;
+            }
+            current[chunk][index & MASK] = value;
+            size = index + 1;
+            return index;
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return (T) chunks[index >>> BITS][index & MASK];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    static final class LongColumn {
+        private volatile long[][] chunks = new long[0][];
+
+        long get(int row) {
+            return chunks[row >>> CHUNK_BITS][row & CHUNK_MASK];
+        }
+
+        void set(int row, long value) {
+            ensureChunk(row >>> CHUNK_BITS)[row & CHUNK_MASK] = value;
+        }
+
+        private long[] ensureChunk(int chunk) {
+            long[][] current = chunks;
+            if (chunk < current.length) {
+                return current[chunk];
+            }
+            long[][] grown = Arrays.copyOf(current, chunk + 1);
+            grown[chunk] = new long[CHUNK_SIZE];
+            chunks = grown;
+            return grown[chunk];
+        }
+    }
+
+    static final class IntColumn {
+        private volatile int[][] chunks = new int[0][];
+
+        int get(int row) {
+            return chunks[row >>> CHUNK_BITS][row & CHUNK_MASK];
+        }
+
+        void set(int row, int value) {
+            ensureChunk(row >>> CHUNK_BITS)[row & CHUNK_MASK] = value;
+        }
+
+        private int[] ensureChunk(int chunk) {
+            int[][] current = chunks;
+            if (chunk < current.length) {
+                return current[chunk];
+            }
+            int[][] grown = Arrays.copyOf(current, chunk + 1);
+            grown[chunk] = new int[CHUNK_SIZE];
+            chunks = grown;
+            return grown[chunk];
+        }
+    }
+
+    static final class ByteColumn {
+        private volatile byte[][] chunks = new byte[0][];
+
+        byte get(int row) {
+            return chunks[row >>> CHUNK_BITS][row & CHUNK_MASK];
+        }
+
+        void set(int row, byte value) {
+            ensureChunk(row >>> CHUNK_BITS)[row & CHUNK_MASK] = value;
+        }
+
+        private byte[] ensureChunk(int chunk) {
+            byte[][] current = chunks;
+            if (chunk < current.length) {
+                return current[chunk];
+            }
+            byte[][] grown = Arrays.copyOf(current, chunk + 1);
+            grown[chunk] = new byte[CHUNK_SIZE];
+            chunks = grown;
+            return grown[chunk];
+        }
+    }
+}
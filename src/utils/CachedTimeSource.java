@@ -0,0 +1,47 @@
+package utils;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Coarse clock for high-throughput ingestion: a daemon thread reads the system clock once per
+ * resolution period and publishes it, so each read is a single volatile load. Readers see time in
+ * steps of about one period, and never going backwards.
+ */
+public class CachedTimeSource implements TimeSource, Closeable {
+    private final long resolutionNanos;
+    private final Thread ticker;
+    private volatile long nowMicros;
+    private volatile boolean running = true;
+
+    public CachedTimeSource(long resolutionMicros) {
+        if (resolutionMicros <= 0) {
+            throw new IllegalArgumentException("The clock resolution must be positive");
+        }
+        this.resolutionNanos = TimeUnit.MICROSECONDS.toNanos(resolutionMicros);
+        this.nowMicros = SYSTEM.currentTimeMicros();
+        this.ticker = new Thread(this::tick, "cached-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public long currentTimeMicros() {
+        return nowMicros;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(ticker);
+    }
+
+    private void tick() {
+        while (running) {
+            LockSupport.parkNanos(resolutionNanos);
+            // Only the ticker writes, so a system clock step back leaves the cached value where it was
+            nowMicros = Math.max(nowMicros, SYSTEM.currentTimeMicros());
+        }
+    }
+}
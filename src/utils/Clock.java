@@ -0,0 +1,46 @@
+package utils;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * The time source transactions and IDs are stamped from; the system clock unless replaced at startup.
+ * Timestamps stay primitive epoch microseconds everywhere else; these conversions are for the menus,
+ * which read and show dates in the local time zone.
+ */
+public final class Clock {
+    private static volatile TimeSource source = TimeSource.SYSTEM;
+
+    private Clock() {
+    }
+
+    public static long nowMicros() {
+        return source.currentTimeMicros();
+    }
+
+    public static long nowMillis() {
+        return source.currentTimeMillis();
+    }
+
+    public static TimeSource getSource() {
+        return source;
+    }
+
+    public static void setSource(TimeSource source) {
+        if (source == null) {
+            throw new IllegalArgumentException("A time source is required");
+        }
+        Clock.source = source;
+    }
+
+    public static long toMicros(LocalDateTime date) {
+        Instant instant = date.atZone(ZoneId.systemDefault()).toInstant();
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+    }
+
+    public static LocalDateTime toLocalDateTime(long micros) {
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L);
+        return LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,14 @@
+package utils;
+
+import java.util.UUID;
+
+/**
+ * Source of entity IDs (transactions, accounts, clients, managers). IDs are 128-bit values in the
+ * standard UUID text form, so the ledger and snapshots keep storing them as two longs.
+ */
+public interface IdGenerator {
+    // The original scheme: random (version 4) UUIDs from SecureRandom
+    IdGenerator RANDOM = () -> UUID.randomUUID().toString();
+
+    String nextId();
+}
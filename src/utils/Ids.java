@@ -0,0 +1,22 @@
+package utils;
+
+/**
+ * The ID generator every entity constructor draws from; time-ordered (node 0) unless replaced at startup.
+ */
+public final class Ids {
+    private static volatile IdGenerator generator = new TimeOrderedIdGenerator(0);
+
+    private Ids() {
+    }
+
+    public static String next() {
+        return generator.nextId();
+    }
+
+    public static void setGenerator(IdGenerator generator) {
+        if (generator == null) {
+            throw new IllegalArgumentException("An ID generator is required");
+        }
+        Ids.generator = generator;
+    }
+}
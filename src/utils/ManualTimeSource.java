@@ -0,0 +1,38 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deterministic clock for tests and replays: time only moves when set or advanced, or by a fixed
+ * step on every read if one is given, so the same sequence of operations always gets the same timestamps.
+ */
+public class ManualTimeSource implements TimeSource {
+    private final AtomicLong nowMicros;
+    private final long stepMicros;
+
+    public ManualTimeSource(long startMicros) {
+        this(startMicros, 0L);
+    }
+
+    public ManualTimeSource(long startMicros, long stepMicros) {
+        if (stepMicros < 0) {
+            throw new IllegalArgumentException("The clock step can't be negative");
+        }
+        this.nowMicros = new AtomicLong(startMicros);
+        this.stepMicros = stepMicros;
+    }
+
+    // Each read returns the current time, then moves it on by the step
+    @Override
+    public long currentTimeMicros() {
+        return stepMicros == 0L ? nowMicros.get() : nowMicros.getAndAdd(stepMicros);
+    }
+
+    public void set(long micros) {
+        nowMicros.set(micros);
+    }
+
+    public void advance(long micros) {
+        nowMicros.addAndGet(micros);
+    }
+}
@@ -0,0 +1,43 @@
+package utils;
+
+/**
+ * Fixed-point money helpers. Amounts are held as a {@code long} of centimes (1 MAD = 100 centimes),
+ * so balances and report sums stay exact; doubles are only used at the console boundary.
+ */
+public final class Money {
+    public static final long CENTIMES_PER_DIRHAM = 100L;
+
+    private static final double MAX_AMOUNT = (double) (Long.MAX_VALUE / CENTIMES_PER_DIRHAM);
+
+    private Money() {
+    }
+
+    public static long fromAmount(double amount) {
+        if (Double.isNaN(amount) || Math.abs(amount) > MAX_AMOUNT) {
+            throw new IllegalArgumentException("Invalid amount: " + amount);
+        }
+        return Math.round(amount * CENTIMES_PER_DIRHAM);
+    }
+
+    public static double toAmount(long centimes) {
+        return (double) centimes / CENTIMES_PER_DIRHAM;
+    }
+
+    public static long add(long left, long right) {
+        return Math.addExact(left, right);
+    }
+
+    public static long sum(long[] centimes, int length) {
+        long total = 0L;
+        for (int i = 0; i < length; i++) {
+            total += centimes[i];
+        }
+        return total;
+    }
+
+    public static String format(long centimes) {
+        long units = Math.abs(centimes / CENTIMES_PER_DIRHAM);
+        long fraction = Math.abs(centimes % CENTIMES_PER_DIRHAM);
+        return (centimes < 0 ? "-" : "") + units + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+}
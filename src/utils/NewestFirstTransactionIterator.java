@@ -0,0 +1,117 @@
+package utils;
+
+import models.Account;
+import models.Transaction;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Lazily merges the per-account transaction lists of several accounts, newest first.
+ * Each account's list is already in append (time) order, so this walks every list backwards
+ * and only keeps one cursor per account in a heap: reading the first k entries costs O(k log accounts).
+ * <p>
+ * Entries are ordered by timestamp, then by transaction ID, both descending. The order is total, so a
+ * transfer between two of the merged accounts comes out of both lists back to back and is returned once.
+ */
+public class NewestFirstTransactionIterator implements Iterator<Transaction> {
+    // The ID breaks ties between entries stamped in the same microsecond
+    public static final Comparator<Transaction> NEWEST_FIRST = Comparator.comparingLong(Transaction::getTimestamp)
+            .thenComparing(Transaction::getTransactionId).reversed();
+
+    private final PriorityQueue<Cursor> cursors;
+    private final long from;
+
+    public NewestFirstTransactionIterator(List<Account> accounts) {
+        this(accounts, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Merges only the entries stamped in [from, to) (epoch microseconds).
+     * Each account is positioned on {@code to} by binary search.
+     */
+    public NewestFirstTransactionIterator(List<Account> accounts, long from, long to) {
+        this(accounts, from, to, null);
+    }
+
+    /**
+     * Merges the entries that come strictly after ({@code afterTimestamp}, {@code afterId}) in newest-first
+     * order, whether or not a transaction with that key still exists.
+     */
+    public NewestFirstTransactionIterator(List<Account> accounts, long afterTimestamp, String afterId) {
+        this(accounts, Long.MIN_VALUE, afterTimestamp + 1, afterId);
+    }
+
+    private NewestFirstTransactionIterator(List<Account> accounts, long from, long to, String afterId) {
+        this.from = from;
+        this.cursors = new PriorityQueue<>(Math.max(1, accounts.size()),
+                (left, right) -> NEWEST_FIRST.compare(left.current, right.current));
+        for (Account account : accounts) {
+            Cursor cursor = new Cursor(account, to == Long.MAX_VALUE ? account.getTransactionCount() : account.lowerBound(to),
+                    to - 1, afterId);
+            requeue(cursor);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !cursors.isEmpty();
+    }
+
+    @Override
+    public Transaction next() {
+        Cursor cursor = cursors.poll();
+        if (cursor == null) {
+            throw new NoSuchElementException();
+        }
+        Transaction transaction = cursor.current;
+        requeue(cursor);
+        // The other side of a transfer between two merged accounts, if any, is next in line
+        while (!cursors.isEmpty() && cursors.peek().current.getTransactionId().equals(transaction.getTransactionId())) {
+            requeue(cursors.poll());
+        }
+        return transaction;
+    }
+
+    private void requeue(Cursor cursor) {
+        if (cursor.advance() && inRange(cursor.current)) {
+            cursors.add(cursor);
+        }
+    }
+
+    private boolean inRange(Transaction transaction) {
+        return transaction.getTimestamp() >= from;
+    }
+
+    private static final class Cursor {
+        private final Account account;
+        private final long lastTimestamp;
+        private final String beforeId;
+        private int index;
+        private Transaction current;
+
+        // Positioned just past the first entry to return; call advance() to load it. If beforeId is set,
+        // entries stamped lastTimestamp are only returned when their ID sorts below it.
+        private Cursor(Account account, int end, long lastTimestamp, String beforeId) {
+            this.account = account;
+            this.index = end;
+            this.lastTimestamp = lastTimestamp;
+            this.beforeId = beforeId;
+        }
+
+        // Null entries are deleted transactions, or positions lost to a compaction since the cursor was placed
+        private boolean advance() {
+            while (--index >= 0) {
+                current = account.getTransaction(index);
+                if (current != null && (beforeId == null || current.getTimestamp() != lastTimestamp
+                        || current.getTransactionId().compareTo(beforeId) < 0)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
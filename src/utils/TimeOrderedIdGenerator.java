@@ -0,0 +1,56 @@
+package utils;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-ordered IDs in the UUID version 7 layout, strictly increasing within a process:
+ * <pre>
+ * high: 48-bit Unix milliseconds | version 7 | 12-bit sequence within the millisecond
+ * low:  variant | 14-bit node | 48 random bits
+ * </pre>
+ * Each ID takes one CAS and a ThreadLocalRandom draw instead of a SecureRandom read. A burst of more
+ * than 4096 IDs in one millisecond, or a clock that steps back, borrows from the next millisecond
+ * rather than repeating. The node keeps IDs from different processes apart; the random bits cover
+ * a restarted process that reuses a millisecond.
+ */
+public class TimeOrderedIdGenerator implements IdGenerator {
+    public static final int MAX_NODE = (1 << 14) - 1;
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000_0000_0000_0000L;
+    private static final long RANDOM_MASK = (1L << 48) - 1;
+
+    private final long node;
+    private final AtomicLong last = new AtomicLong(); // milliseconds << 12 | sequence of the last ID
+
+    public TimeOrderedIdGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("The node must be between 0 and " + MAX_NODE);
+        }
+        this.node = (long) node << 48;
+    }
+
+    @Override
+    public String nextId() {
+        long stamp;
+        long previous;
+        do {
+            previous = last.get();
+            stamp = Math.max(Clock.nowMillis() << SEQUENCE_BITS, previous + 1);
+        } while (!last.compareAndSet(previous, stamp));
+        long high = (stamp >>> SEQUENCE_BITS) << 16 | VERSION | (stamp & ((1 << SEQUENCE_BITS) - 1));
+        long low = VARIANT | node | (ThreadLocalRandom.current().nextLong() & RANDOM_MASK);
+        return new UUID(high, low).toString();
+    }
+
+    /**
+     * Creation time (Unix milliseconds) of an ID this generator made, or -1 for any other kind of ID.
+     */
+    public static long timestampOf(String id) {
+        UUID uuid = UUID.fromString(id);
+        return uuid.version() == 7 ? uuid.getMostSignificantBits() >>> 16 : -1L;
+    }
+}
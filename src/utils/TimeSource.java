@@ -0,0 +1,20 @@
+package utils;
+
+import java.time.Instant;
+
+/**
+ * Source of timestamps for transactions and IDs, in microseconds since the Unix epoch (UTC).
+ */
+public interface TimeSource {
+    // Reads the system clock on every call, at whatever precision Instant.now() offers
+    TimeSource SYSTEM = () -> {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000;
+    };
+
+    long currentTimeMicros();
+
+    default long currentTimeMillis() {
+        return Math.floorDiv(currentTimeMicros(), 1_000L);
+    }
+}
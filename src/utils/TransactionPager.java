@@ -0,0 +1,78 @@
+package utils;
+
+import models.Account;
+import models.Transaction;
+import models.TransactionPage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Cursor-based paging over a newest-first history: the merged history of a set of accounts, or any
+ * other {@link Source}. A cursor encodes the (timestamp, transaction ID) of the last entry of the
+ * previous page; each account is positioned on it by binary search, so only the requested page is
+ * ever materialized. A transfer between two of the accounts is listed once.
+ */
+public final class TransactionPager {
+    private static final char SEPARATOR = '|';
+
+    private TransactionPager() {
+    }
+
+    /**
+     * A newest-first listing by (timestamp, transaction ID) that resumes strictly after a given key, or
+     * starts from the newest entry when the ID is null. Only the first {@code limit} entries are read.
+     */
+    public interface Source {
+        Iterator<Transaction> newestFirst(long afterTimestamp, String afterId, int limit);
+    }
+
+    public static TransactionPage page(List<Account> accounts, String cursor, int pageSize) {
+        return page((afterTimestamp, afterId, limit) -> afterId == null
+                ? new NewestFirstTransactionIterator(accounts)
+                : new NewestFirstTransactionIterator(accounts, afterTimestamp, afterId), cursor, pageSize);
+    }
+
+    public static TransactionPage page(Source source, String cursor, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        long cursorTimestamp = Long.MAX_VALUE;
+        String cursorId = null;
+        if (cursor != null) {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid page cursor");
+            }
+            try {
+                cursorTimestamp = Long.parseLong(decoded.substring(0, separator));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid page cursor");
+            }
+            cursorId = decoded.substring(separator + 1);
+        }
+
+        // The next page starts strictly after the cursor's key, even if that transaction has since been
+        // deleted; one entry more than the page tells whether there is a next page
+        Iterator<Transaction> iterator = source.newestFirst(cursorTimestamp, cursorId, pageSize + 1);
+        List<Transaction> transactions = new ArrayList<>(pageSize);
+        while (iterator.hasNext() && transactions.size() < pageSize) {
+            transactions.add(iterator.next());
+        }
+
+        String nextCursor = null;
+        if (iterator.hasNext() && !transactions.isEmpty()) {
+            nextCursor = encode(transactions.get(transactions.size() - 1));
+        }
+        return new TransactionPage(transactions, nextCursor);
+    }
+
+    private static String encode(Transaction transaction) {
+        String raw = Long.toString(transaction.getTimestamp()) + SEPARATOR + transaction.getTransactionId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
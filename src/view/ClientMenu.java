@@ -7,6 +7,7 @@ import models.Client;
 import models.Account;
 import models.Transaction;
 import models.enums.TransactionType;
+import utils.Clock;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -20,7 +21,10 @@ public class ClientMenu {
     private final ClientController clientController;
     private final TransactionController transactionController;
     private final AuthController authController;
+    private static final int PAGE_SIZE = 10;
+
     private final Scanner scanner;
+    private final TransactionBrowser transactionBrowser;
     private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
 
     public ClientMenu(ClientController clientController, TransactionController transactionController, AuthController authController) {
@@ -28,6 +32,7 @@ public class ClientMenu {
         this.transactionController = transactionController;
         this.authController = authController;
         this.scanner = new Scanner(System.in);
+        this.transactionBrowser = new TransactionBrowser(scanner);
     }
 
     public void displayClientMenu() {
@@ -118,8 +123,7 @@ public class ClientMenu {
 
     private void viewTransactionHistory() {
         System.out.println("\n--- TRANSACTION HISTORY ---");
-        List<Transaction> transactions = clientController.viewTransactionHistory();
-        displayTransactions(transactions);
+        transactionBrowser.browse(cursor -> clientController.viewTransactionHistoryPage(cursor, PAGE_SIZE));
     }
 
     private void makeDeposit() {
@@ -257,7 +261,7 @@ public class ClientMenu {
                 return;
             }
 
-            List<Transaction> transactions = clientController.filterTransactionsByDate(startDate, endDate);
+            List<Transaction> transactions = clientController.filterTransactionsByDate(Clock.toMicros(startDate), Clock.toMicros(endDate));
             System.out.println("\n--- TRANSACTIONS FROM " + startDateStr + " TO " + endDateStr + " ---");
             displayTransactions(transactions);
         } catch (DateTimeParseException e) {
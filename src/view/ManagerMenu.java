@@ -8,6 +8,7 @@ import models.Account;
 import models.Transaction;
 import models.enums.AccountType;
 import models.enums.TransactionType;
+import utils.Clock;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -20,13 +21,17 @@ import java.util.Collections;
 public class ManagerMenu {
     private final ManagerController managerController;
     private final AuthController authController;
+    private static final int PAGE_SIZE = 10;
+
     private final Scanner scanner;
+    private final TransactionBrowser transactionBrowser;
     private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
 
     public ManagerMenu(ManagerController managerController, AuthController authController) {
         this.managerController = managerController;
         this.authController = authController;
         this.scanner = new Scanner(System.in);
+        this.transactionBrowser = new TransactionBrowser(scanner);
     }
 
     public void displayManagerMenu() {
@@ -67,6 +72,8 @@ public class ManagerMenu {
         System.out.println("15. Detect Suspicious Transactions");
         System.out.println("16. View Transaction Statistics");
         System.out.println("17. View Account Type Statistics");
+        System.out.println("18. View Top Clients by Balance");
+        System.out.println("19. Find Client Balance Rank");
         System.out.println();
         System.out.println("20. Logout");
         System.out.print("Choose an option: ");
@@ -91,6 +98,8 @@ public class ManagerMenu {
                 case 15: detectSuspiciousTransactions(); break;
                 case 16: viewTransactionStatistics(); break;
                 case 17: viewAccountTypeStatistics(); break;
+                case 18: viewTopClientsByBalance(); break;
+                case 19: findClientBalanceRank(); break;
                 case 20:
                     authController.logout();
                     System.out.println("Logged out successfully!");
@@ -353,9 +362,8 @@ public class ManagerMenu {
         }
 
         try {
-            List<Transaction> transactions = managerController.viewClientTransactions(clientId);
             System.out.println("\n--- TRANSACTIONS FOR CLIENT " + clientId + " ---");
-            displayTransactions(transactions);
+            transactionBrowser.browse(cursor -> managerController.viewClientTransactionsPage(clientId, cursor, PAGE_SIZE));
         } catch (Exception e) {
             System.out.println("Failed to retrieve transactions: " + e.getMessage());
         }
@@ -364,8 +372,7 @@ public class ManagerMenu {
     private void viewAllTransactions() {
         System.out.println("\n--- ALL SYSTEM TRANSACTIONS ---");
         try {
-            List<Transaction> transactions = managerController.viewAllTransactions();
-            displayTransactions(transactions);
+            transactionBrowser.browse(cursor -> managerController.viewAllTransactionsPage(cursor, PAGE_SIZE));
         } catch (Exception e) {
             System.out.println("Failed to retrieve transactions: " + e.getMessage());
         }
@@ -432,7 +439,7 @@ public class ManagerMenu {
             String endDateStr = scanner.nextLine().trim();
             LocalDateTime endDate = LocalDateTime.parse(endDateStr, dateFormatter);
 
-            List<Transaction> transactions = managerController.filterTransactionsByDate(startDate, endDate);
+            List<Transaction> transactions = managerController.filterTransactionsByDate(Clock.toMicros(startDate), Clock.toMicros(endDate));
             System.out.println("\n--- TRANSACTIONS FROM " + startDateStr + " TO " + endDateStr + " ---");
             displayTransactions(transactions);
         } catch (DateTimeParseException e) {
@@ -496,6 +503,42 @@ public class ManagerMenu {
         }
     }
 
+    private void viewTopClientsByBalance() {
+        System.out.println("\n--- TOP CLIENTS BY BALANCE ---");
+        System.out.print("How many clients (default 10): ");
+        String input = scanner.nextLine().trim();
+        try {
+            int limit = input.isEmpty() ? 10 : Integer.parseInt(input);
+            List<Client> clients = managerController.getTopClientsByBalance(limit);
+            if (clients.isEmpty()) {
+                System.out.println("No clients found.");
+                return;
+            }
+            for (int i = 0; i < clients.size(); i++) {
+                Client client = clients.get(i);
+                System.out.printf("%3d. %s | Total Balance: %.2f%n", i + 1, client,
+                        managerController.calculateClientTotalBalance(client.getClientId()));
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number format.");
+        } catch (Exception e) {
+            System.out.println("Failed to get the top clients: " + e.getMessage());
+        }
+    }
+
+    private void findClientBalanceRank() {
+        System.out.println("\n--- CLIENT BALANCE RANK ---");
+        System.out.print("Client ID: ");
+        String clientId = scanner.nextLine().trim();
+        try {
+            int rank = managerController.getClientBalanceRank(clientId);
+            System.out.printf("Client %s ranks #%d by total balance (%.2f)%n", clientId, rank,
+                    managerController.calculateClientTotalBalance(clientId));
+        } catch (Exception e) {
+            System.out.println("Failed to find the client's rank: " + e.getMessage());
+        }
+    }
+
     private void displayTransactions(List<Transaction> transactions) {
         if (transactions.isEmpty()) {
             System.out.println("No transactions found.");
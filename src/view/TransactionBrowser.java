@@ -0,0 +1,50 @@
+package view;
+
+import models.Transaction;
+import models.TransactionPage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.function.Function;
+
+/**
+ * Console paging through a newest-first transaction listing, shared by the client and manager menus.
+ */
+public class TransactionBrowser {
+    private final Scanner scanner;
+
+    public TransactionBrowser(Scanner scanner) {
+        this.scanner = scanner;
+    }
+
+    // pageLoader maps a page cursor (null for the first page) to that page
+    public void browse(Function<String, TransactionPage> pageLoader) {
+        // Only the current page is held; earlier cursors are kept to step back
+        List<String> previousCursors = new ArrayList<>();
+        String cursor = null;
+        while (true) {
+            TransactionPage page = pageLoader.apply(cursor);
+            if (page.getTransactions().isEmpty()) {
+                System.out.println("No transactions found.");
+                return;
+            }
+            System.out.println("Transactions - Page " + (previousCursors.size() + 1));
+            for (Transaction transaction : page.getTransactions()) {
+                System.out.println(transaction);
+            }
+            System.out.print((page.hasNext() ? "[n] Next page  " : "") + (previousCursors.isEmpty() ? "" : "[p] Previous page  ") + "[q] Back: ");
+            String choice = scanner.nextLine().trim().toLowerCase();
+            if ("n".equals(choice) && page.hasNext()) {
+                previousCursors.add(cursor);
+                cursor = page.getNextCursor();
+            } else if ("p".equals(choice) && !previousCursors.isEmpty()) {
+                cursor = previousCursors.remove(previousCursors.size() - 1);
+            } else if ("q".equals(choice)) {
+                return;
+            } else {
+                System.out.println("Invalid option.");
+            }
+        }
+    }
+}